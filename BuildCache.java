@@ -0,0 +1,152 @@
+package driver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import frontend.ModuleInterface;
+
+/**
+ * A persistent on-disk cache of compiled module classes.
+ *
+ * Entries are keyed by a hash of the module's source code together with the interfaces of the modules
+ * it imports, directly or indirectly: an exported declaration may refer to a type declared in a module
+ * further down the import graph, whose descriptor is then baked into the importer's code. Hence a
+ * module is recompiled when its own source changes or when the exported interface of one of its imports
+ * changes, but not when only the implementation of an import changes. If code is inlined across
+ * modules, keys are computed over the full sources of all imported modules instead.
+ * Keys also cover the compiler options, so code generated with different options is never mixed up.
+ */
+public class BuildCache {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The directory holding the cached class files. */
+	private final File dir;
+
+	private final AtomicInteger hits = new AtomicInteger(), misses = new AtomicInteger();
+
+	public BuildCache(File dir) throws IOException {
+		this.dir = dir;
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("cannot create cache directory " + dir);
+	}
+
+	/**
+	 * Computes the cache key of a module compiled without options, which only depends on the interfaces
+	 * of the modules it imports, directly or indirectly.
+	 *
+	 * @param source the source code of the module
+	 * @param iface the interface of the module
+	 * @param interfaces the interfaces of all modules in the program, indexed by module name
+	 */
+	public static String key(String source, ModuleInterface iface, Map<String, ModuleInterface> interfaces) {
+		return key(source, iface, interfaces, null, "");
+	}
+
+	/**
+	 * Computes the cache key of a module.
+	 *
+	 * @param source the source code of the module
+	 * @param iface the interface of the module
+	 * @param interfaces the interfaces of all modules in the program, indexed by module name
+	 * @param sources if not <code>null</code>, the sources of all modules in the program, indexed by module
+	 *                name; the key then depends on the full sources of all modules the module imports,
+	 *                directly or indirectly, as is needed when their code is inlined into the module
+	 * @param options a description of the compiler options that affect the generated code
+	 */
+	public static String key(String source, ModuleInterface iface, Map<String, ModuleInterface> interfaces,
+							 Map<String, String> sources, String options) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(options.getBytes(UTF8));
+			md.update((byte)0);
+			md.update(source.getBytes(UTF8));
+			List<String> imports = new ArrayList<String>(importClosure(iface, interfaces));
+			Collections.sort(imports);
+			for(String imp : imports) {
+				ModuleInterface dep = interfaces.get(imp);
+				md.update((byte)0);
+				md.update(imp.getBytes(UTF8));
+				md.update((byte)0);
+				if(sources != null && sources.containsKey(imp))
+					md.update(sources.get(imp).getBytes(UTF8));
+				else if(dep != null)
+					md.update(dep.getSignature().getBytes(UTF8));
+			}
+			StringBuilder res = new StringBuilder();
+			for(byte b : md.digest())
+				res.append(String.format("%02x", b));
+			return res.toString();
+		} catch(NoSuchAlgorithmException e) {
+			throw new Error(e);
+		}
+	}
+
+	/** The names of all modules imported by the given module, directly or indirectly, excluding itself. */
+	private static Set<String> importClosure(ModuleInterface iface, Map<String, ModuleInterface> interfaces) {
+		Set<String> res = new HashSet<String>();
+		Deque<String> worklist = new ArrayDeque<String>(iface.getImports());
+		while(!worklist.isEmpty()) {
+			String name = worklist.pop();
+			if(res.add(name) && interfaces.containsKey(name))
+				worklist.addAll(interfaces.get(name).getImports());
+		}
+		res.remove(iface.getName());
+		return res;
+	}
+
+	private File entry(String name, String key) {
+		return new File(dir, name + "-" + key + ".class");
+	}
+
+	/**
+	 * Looks up the cached class file for the module with the given name and key; returns
+	 * <code>null</code> if there is none.
+	 */
+	public byte[] lookup(String name, String key) throws IOException {
+		File file = entry(name, key);
+		if(!file.isFile()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return Files.readAllBytes(file.toPath());
+	}
+
+	/** Stores the class file for the module with the given name and key. */
+	public void store(String name, String key, byte[] code) throws IOException {
+		// write to a temporary file first, so that concurrent readers never see partial entries
+		File tmp = File.createTempFile(name, ".tmp", dir);
+		Files.write(tmp.toPath(), code);
+		Files.move(tmp.toPath(), entry(name, key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/** The number of lookups that found a cached class file. */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/** The number of lookups that did not find a cached class file. */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/** Resets the hit and miss statistics. */
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+}
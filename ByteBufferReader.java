@@ -0,0 +1,67 @@
+package lexer;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reader over UTF-8 encoded bytes held in a {@link ByteBuffer}, such as a memory-mapped source file.
+ *
+ * The token set of the language is pure ASCII outside of string literals, so bytes are copied straight
+ * into the scanner's buffer as long as they are ASCII; only once a non-ASCII byte is seen does the reader
+ * switch to a UTF-8 decoder for the rest of the input.
+ */
+public class ByteBufferReader extends Reader {
+	private final ByteBuffer bytes;
+	private CharsetDecoder decoder = null;
+	private boolean flushed = false;
+
+	public ByteBufferReader(ByteBuffer bytes) {
+		this.bytes = bytes;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) {
+		if(len == 0)
+			return 0;
+		// the decoder cannot be used again once it has been flushed
+		if(flushed)
+			return -1;
+		int n = 0;
+		if(decoder == null) {
+			// fast path: plain ASCII
+			int limit = Math.min(len, bytes.remaining());
+			while(n < limit) {
+				byte b = bytes.get(bytes.position());
+				if(b < 0) {
+					decoder = StandardCharsets.UTF_8.newDecoder()
+									.onMalformedInput(CodingErrorAction.REPLACE)
+									.onUnmappableCharacter(CodingErrorAction.REPLACE);
+					break;
+				}
+				bytes.position(bytes.position() + 1);
+				cbuf[off + n++] = (char)b;
+			}
+			if(decoder == null)
+				return n == 0 ? -1 : n;
+		}
+
+		// slow path: decode the remainder of the input
+		CharBuffer out = CharBuffer.wrap(cbuf, off + n, len - n);
+		CoderResult res = decoder.decode(bytes, out, true);
+		if(res.isUnderflow() && !flushed) {
+			res = decoder.flush(out);
+			flushed = res.isUnderflow();
+		}
+		n = out.position() - off;
+		return n == 0 && flushed ? -1 : n;
+	}
+
+	@Override
+	public void close() {
+	}
+}
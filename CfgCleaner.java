@@ -0,0 +1,128 @@
+package backend;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.SootMethod;
+import soot.Unit;
+import soot.UnitBox;
+import soot.jimple.GotoStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.NopStmt;
+import soot.util.Chain;
+
+/**
+ * This class cleans up the control flow graph of a generated method body: it removes the
+ * <code>nop</code> statements used as join points, threads jumps to <code>goto</code> statements
+ * through to their final target, drops unreachable statements, and removes jumps to the
+ * immediately following statement. These steps are repeated until nothing changes.
+ *
+ * Units are removed through the body's patching chain, which redirects jumps to a removed
+ * unit to the unit following it.
+ */
+public class CfgCleaner {
+	/** The number of units removed from every method cleaned so far. */
+	private final Map<SootMethod, Integer> removed = new LinkedHashMap<SootMethod, Integer>();
+
+	/** Cleans the given body; returns the number of units removed. */
+	public int clean(Body body) {
+		Chain<Unit> units = body.getUnits();
+		int before = units.size();
+		boolean changed;
+		do {
+			changed = removeNops(units);
+			changed |= threadJumps(units);
+			changed |= removeUnreachable(units);
+			changed |= removeJumpsToNext(units);
+		} while(changed);
+		int n = before - units.size();
+		removed.put(body.getMethod(), n);
+		return n;
+	}
+
+	/** Removes all nops, except for one at the very end of the body, which has no successor to redirect jumps to. */
+	private static boolean removeNops(Chain<Unit> units) {
+		boolean changed = false;
+		for(Unit u : new ArrayList<Unit>(units)) {
+			if(u instanceof NopStmt && u != units.getLast()) {
+				units.remove(u);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/** Follows a chain of gotos starting at the given unit; returns the first unit that is not a goto. */
+	private static Unit finalTarget(Unit target) {
+		Set<Unit> seen = new HashSet<Unit>();
+		while(target instanceof GotoStmt && seen.add(target))
+			target = ((GotoStmt)target).getTarget();
+		return target;
+	}
+
+	private static boolean threadJumps(Chain<Unit> units) {
+		boolean changed = false;
+		for(Unit u : units) {
+			if(u instanceof GotoStmt || u instanceof IfStmt) {
+				for(UnitBox box : u.getUnitBoxes()) {
+					Unit target = finalTarget(box.getUnit());
+					if(target != box.getUnit()) {
+						box.setUnit(target);
+						changed = true;
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+	private static boolean removeUnreachable(Chain<Unit> units) {
+		if(units.isEmpty())
+			return false;
+		Set<Unit> reachable = new HashSet<Unit>();
+		Deque<Unit> worklist = new ArrayDeque<Unit>();
+		worklist.push(units.getFirst());
+		while(!worklist.isEmpty()) {
+			Unit u = worklist.pop();
+			if(!reachable.add(u))
+				continue;
+			if(u.fallsThrough() && units.getSuccOf(u) != null)
+				worklist.push(units.getSuccOf(u));
+			for(UnitBox box : u.getUnitBoxes())
+				worklist.push(box.getUnit());
+		}
+		boolean changed = false;
+		for(Unit u : new ArrayList<Unit>(units)) {
+			if(!reachable.contains(u)) {
+				units.remove(u);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/** Removes gotos and conditional jumps whose target is the next unit anyway. */
+	private static boolean removeJumpsToNext(Chain<Unit> units) {
+		boolean changed = false;
+		for(Unit u : new ArrayList<Unit>(units)) {
+			Unit target = u instanceof GotoStmt ? ((GotoStmt)u).getTarget()
+						: u instanceof IfStmt ? ((IfStmt)u).getTarget() : null;
+			if(target != null && target == units.getSuccOf(u)) {
+				units.remove(u);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/** Returns the number of units removed from every method cleaned by this object. */
+	public Map<SootMethod, Integer> getRemovedUnits() {
+		return removed;
+	}
+}
@@ -0,0 +1,31 @@
+package lexer;
+
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * A reader over a {@link CharBuffer}; characters are copied straight from the buffer into the
+ * scanner's buffer, without any intermediate decoding or buffering.
+ */
+public class CharBufferReader extends Reader {
+	private final CharBuffer chars;
+
+	public CharBufferReader(CharBuffer chars) {
+		this.chars = chars;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) {
+		if(len == 0)
+			return 0;
+		if(!chars.hasRemaining())
+			return -1;
+		int n = Math.min(len, chars.remaining());
+		chars.get(cbuf, off, n);
+		return n;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,125 @@
+package backend;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import soot.ArrayType;
+import soot.Local;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.ValueBox;
+import soot.baf.BafASMBackend;
+import soot.baf.BafBody;
+import soot.options.Options;
+
+/**
+ * This class turns the {@link SootClass}es produced by {@link ProgramCodeGenerator} directly
+ * into class files, without going through Jasmin assembly text.
+ *
+ * Method bodies are converted to Baf and assembled in memory; the constant pool, stack map frames
+ * and the maximum stack and local sizes are computed during assembly.
+ */
+public class ClassFileGenerator {
+	/** The class file version to emit. */
+	private static final int JAVA_VERSION = Options.java_version_1_8;
+
+	private ClassFileGenerator() {}
+
+	/** A backend whose Baf bodies are all created, and whose referenced classes are all resolved, on construction. */
+	private static class PreparedBackend extends BafASMBackend {
+		PreparedBackend(SootClass klass) {
+			super(klass, JAVA_VERSION);
+			resolveHierarchy(klass.getType());
+			for(SootMethod method : klass.getMethods()) {
+				if(!method.isConcrete())
+					continue;
+				BafBody body = getBafBody(method);
+				resolveHierarchy(method.getReturnType());
+				for(Type parm : method.getParameterTypes())
+					resolveHierarchy(parm);
+				for(Local local : body.getLocals())
+					resolveHierarchy(local.getType());
+				for(ValueBox box : body.getUseAndDefBoxes())
+					resolveHierarchy(box.getValue().getType());
+			}
+		}
+
+		private static void resolveHierarchy(Type type) {
+			if(type instanceof ArrayType)
+				type = ((ArrayType)type).baseType;
+			if(!(type instanceof RefType))
+				return;
+			// resolving a class to the hierarchy level resolves its superclasses and interfaces, too
+			Scene.v().forceResolve(((RefType)type).getClassName(), SootClass.HIERARCHY);
+		}
+	}
+
+	/** Assembles the given class into the bytes of a class file. */
+	public static byte[] generate(SootClass klass) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new BafASMBackend(klass, JAVA_VERSION).generateClassFile(baos);
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Assembles all the given classes; returns a map from class names to class file bytes,
+	 * in the order the classes were given.
+	 */
+	public static Map<String, byte[]> generate(Iterable<SootClass> classes) {
+		Map<String, byte[]> res = new LinkedHashMap<String, byte[]>();
+		for(SootClass klass : classes)
+			res.put(klass.getName(), generate(klass));
+		return res;
+	}
+
+	/**
+	 * Like {@link #generate(Iterable)}, but assembles the classes in parallel on the given pool.
+	 * The result is identical to the sequential version.
+	 *
+	 * Soot keeps its state in global singletons, so everything that touches it is done sequentially
+	 * before the parallel step: the method bodies are converted to Baf up front and cached in the
+	 * backends, and every class the bodies refer to is resolved to the hierarchy level, so that the
+	 * superclass lookups made while computing stack map frames only read the scene. Only the writing of
+	 * the class files runs concurrently.
+	 */
+	public static Map<String, byte[]> generate(Iterable<SootClass> classes, ForkJoinPool pool) {
+		List<SootClass> klasses = new ArrayList<SootClass>();
+		List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+		for(SootClass klass : classes) {
+			final BafASMBackend backend = new PreparedBackend(klass);
+			klasses.add(klass);
+			tasks.add(new Callable<byte[]>() {
+				@Override
+				public byte[] call() {
+					ByteArrayOutputStream baos = new ByteArrayOutputStream();
+					backend.generateClassFile(baos);
+					return baos.toByteArray();
+				}
+			});
+		}
+
+		// collect results in the original order, so the output is deterministic
+		List<Future<byte[]>> results = pool.invokeAll(tasks);
+		Map<String, byte[]> res = new LinkedHashMap<String, byte[]>();
+		try {
+			for(int i=0;i<klasses.size();++i)
+				res.put(klasses.get(i).getName(), results.get(i).get());
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch(ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return res;
+	}
+}
@@ -0,0 +1,23 @@
+package driver;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Signals that a program could not be compiled; carries the diagnostics reported by the front end.
+ */
+public class CompilationException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	private final List<String> diagnostics;
+
+	public CompilationException(List<String> diagnostics) {
+		super(diagnostics.isEmpty() ? "compilation failed" : diagnostics.get(0));
+		this.diagnostics = Collections.unmodifiableList(diagnostics);
+	}
+
+	/** All diagnostics, in the order they were reported. */
+	public List<String> getDiagnostics() {
+		return diagnostics;
+	}
+}
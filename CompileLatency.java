@@ -0,0 +1,86 @@
+package bench;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import backend.PassManager;
+import driver.CompileServer;
+
+/**
+ * Compares the latency of compiling a small program in a fresh JVM, as a command line compiler would,
+ * with the latency of compiling it on a warm {@link CompileServer}. Takes the number of runs as its
+ * argument (20 by default) and prints the median and 90th percentile latencies in milliseconds.
+ *
+ * The cold compiles start a compile server on standard input in a child JVM with the same class path,
+ * send it a single request and wait for the process to exit.
+ */
+public class CompileLatency {
+	private static final List<String> PROGRAM = Arrays.asList(
+		"module A { import B; public int f(int x) { return g(x) * 2; } }",
+		"module B { public int g(int x) { int i; i = 0; while(i < x) { i = i + 1; } return i + 1; } }");
+
+	private static long cold() throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), CompileServer.class.getName())
+				.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		DataOutputStream out = new DataOutputStream(p.getOutputStream());
+		out.writeInt(PROGRAM.size());
+		for(String src : PROGRAM) {
+			byte[] bytes = src.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.close();
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(p.getInputStream()))) {
+			if(!in.readBoolean())
+				throw new IllegalStateException("compilation failed");
+			// read the rest of the response, so the child never blocks on a full pipe
+			byte[] buf = new byte[8192];
+			while(in.read(buf) >= 0)
+				;
+		}
+		p.waitFor();
+		return System.nanoTime() - start;
+	}
+
+	private static void report(String what, List<Long> times) {
+		Collections.sort(times);
+		System.out.printf("%-6s median %8.2f ms, p90 %8.2f ms%n", what,
+				times.get(times.size() / 2) / 1e6, times.get(times.size() * 9 / 10) / 1e6);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+
+		List<Long> cold = new ArrayList<Long>();
+		for(int i=0;i<runs;++i)
+			cold.add(cold());
+		report("cold", cold);
+
+		CompileServer server = new CompileServer(PassManager.Level.O0);
+		int port = server.start(0);
+		try(CompileServer.Client client = new CompileServer.Client(port)) {
+			// warm up the server before measuring
+			for(int i=0;i<runs;++i)
+				client.compile(PROGRAM);
+			List<Long> warm = new ArrayList<Long>();
+			for(int i=0;i<runs;++i) {
+				long start = System.nanoTime();
+				client.compile(PROGRAM);
+				warm.add(System.nanoTime() - start);
+			}
+			report("warm", warm);
+		} finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package driver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import soot.G;
+import soot.SootClass;
+import ast.Program;
+import backend.LibraryStubs;
+import backend.PassManager;
+
+/**
+ * A long-running compiler daemon, which saves the cost of JVM startup, class loading and JIT warm-up
+ * on every compile. Requests are read either from standard input or from clients connecting to a
+ * socket on the loopback interface; every socket client is served by its own thread.
+ *
+ * The protocol is binary and length-prefixed; strings are UTF-8 encoded and preceded by their length
+ * in bytes:
+ * <ul>
+ * <li>a request is the number of module sources as an <code>int</code>, followed by the sources;</li>
+ * <li>a successful response is <code>true</code>, the number of classes, and for every class its name
+ * and the length and bytes of its class file;</li>
+ * <li>a failed response is <code>false</code>, the number of diagnostics, and the diagnostics.</li>
+ * </ul>
+ * A client may send any number of requests over one connection.
+ *
+ * Lexing, parsing and checking only touch the request's own AST and run concurrently. Soot keeps its
+ * state in global singletons, however, so code generation and assembly hold {@link Compiler#SOOT_LOCK},
+ * and every request starts from a freshly reset Soot context, so that classes of different clients
+ * cannot clash. If the server is given a {@link LibraryStubs} snapshot, the context is set up from it.
+ */
+public class CompileServer {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final PassManager.Level level;
+	/** A {@link LibraryStubs} snapshot to set up Soot from, or <code>null</code> to use the Soot class path. */
+	private final byte[] stubs;
+	private final ExecutorService clients = Executors.newCachedThreadPool();
+	private ServerSocket socket;
+
+	public CompileServer(PassManager.Level level) {
+		this(level, null);
+	}
+
+	public CompileServer(PassManager.Level level, byte[] stubs) {
+		this.level = level;
+		this.stubs = stubs;
+	}
+
+	/**
+	 * Compiles the program with the given module sources; returns a map from class names to class
+	 * files. May be called concurrently.
+	 */
+	public Map<String, byte[]> compile(List<String> sources) throws IOException, CompilationException {
+		Compiler compiler = new Compiler();
+		compiler.setPassManager(new PassManager(level));
+		Program prog = compiler.parse(sources);
+		compiler.check(prog);
+		Compiler.SOOT_LOCK.lock();
+		try {
+			if(stubs != null)
+				LibraryStubs.install(new ByteArrayInputStream(stubs));
+			else
+				G.reset();
+			// in stdio mode, standard output carries the protocol
+			G.v().out = System.err;
+			Iterable<SootClass> classes = compiler.generate(prog);
+			return compiler.assemble(classes, null);
+		} finally {
+			Compiler.SOOT_LOCK.unlock();
+		}
+	}
+
+	/** Serves requests read from the given stream until it is closed, writing responses to the other stream. */
+	public void serve(InputStream in, OutputStream out) throws IOException {
+		DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+		for(;;) {
+			int n;
+			try {
+				n = din.readInt();
+			} catch(EOFException e) {
+				return;
+			}
+			List<String> sources = new ArrayList<String>();
+			for(int i=0;i<n;++i)
+				sources.add(readString(din));
+
+			try {
+				Map<String, byte[]> classes = compile(sources);
+				dout.writeBoolean(true);
+				dout.writeInt(classes.size());
+				for(Map.Entry<String, byte[]> entry : classes.entrySet()) {
+					writeString(dout, entry.getKey());
+					dout.writeInt(entry.getValue().length);
+					dout.write(entry.getValue());
+				}
+			} catch(CompilationException e) {
+				writeDiagnostics(dout, e.getDiagnostics());
+			} catch(RuntimeException e) {
+				// report internal errors to the client instead of dropping the connection
+				writeDiagnostics(dout, Collections.singletonList("internal compiler error: " + e));
+			}
+			dout.flush();
+		}
+	}
+
+	/**
+	 * Starts accepting clients on the given port of the loopback interface, in the background; port 0
+	 * picks a free port. Returns the port the server listens on.
+	 */
+	public int start(int port) throws IOException {
+		socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		clients.execute(new Runnable() {
+			@Override
+			public void run() {
+				while(!socket.isClosed()) {
+					final Socket client;
+					try {
+						client = socket.accept();
+					} catch(IOException e) {
+						// the server socket has been closed
+						return;
+					}
+					clients.execute(new Runnable() {
+						@Override
+						public void run() {
+							try(Socket s = client) {
+								serve(s.getInputStream(), s.getOutputStream());
+							} catch(IOException e) {
+								// the client went away; nothing to report to
+							}
+						}
+					});
+				}
+			}
+		});
+		return socket.getLocalPort();
+	}
+
+	/** Stops accepting clients and shuts down the threads serving them. */
+	public void stop() throws IOException {
+		if(socket != null)
+			socket.close();
+		clients.shutdownNow();
+	}
+
+	private static void writeDiagnostics(DataOutputStream out, List<String> diagnostics) throws IOException {
+		out.writeBoolean(false);
+		out.writeInt(diagnostics.size());
+		for(String diagnostic : diagnostics)
+			writeString(out, diagnostic);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/** A client for a compile server listening on a socket. */
+	public static class Client implements AutoCloseable {
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		public Client(int port) throws IOException {
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		/** Compiles the program with the given module sources on the server; see {@link CompileServer#compile(List)}. */
+		public Map<String, byte[]> compile(List<String> sources) throws IOException, CompilationException {
+			out.writeInt(sources.size());
+			for(String source : sources)
+				writeString(out, source);
+			out.flush();
+
+			boolean ok = in.readBoolean();
+			int n = in.readInt();
+			if(!ok) {
+				List<String> diagnostics = new ArrayList<String>();
+				for(int i=0;i<n;++i)
+					diagnostics.add(readString(in));
+				throw new CompilationException(diagnostics);
+			}
+			Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+			for(int i=0;i<n;++i) {
+				String name = readString(in);
+				byte[] code = new byte[in.readInt()];
+				in.readFully(code);
+				classes.put(name, code);
+			}
+			return classes;
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Runs the server. With <code>--port N</code>, it listens on port N of the loopback interface until
+	 * the process is killed; otherwise it serves requests on standard input and output. An optimisation
+	 * level such as <code>-O2</code> and a library stub snapshot with <code>--stubs FILE</code> may be
+	 * given as well.
+	 */
+	public static void main(String[] args) throws IOException {
+		PassManager.Level level = PassManager.Level.O0;
+		int port = -1;
+		byte[] stubs = null;
+		for(int i=0;i<args.length;++i) {
+			if(args[i].equals("--port"))
+				port = Integer.parseInt(args[++i]);
+			else if(args[i].equals("--stubs"))
+				stubs = Files.readAllBytes(Paths.get(args[++i]));
+			else
+				level = PassManager.Level.parse(args[i]);
+		}
+
+		CompileServer server = new CompileServer(level, stubs);
+		if(port < 0) {
+			server.serve(System.in, System.out);
+		} else {
+			System.err.println("compile server listening on port " + server.start(port));
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package driver;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A compiled program loaded into the running JVM, ready to be invoked.
+ *
+ * The module classes of every program are defined by a class loader of their own, so modules of
+ * different programs never clash, and a program's classes can be unloaded once the program has been
+ * closed and is no longer referenced. (Hidden classes cannot be used here, since the modules of a
+ * program refer to each other by name.)
+ *
+ * Functions are invoked through method handles, which are looked up once per function and cached.
+ */
+public class CompiledProgram implements AutoCloseable {
+	/** Defines the classes of a single program on demand. */
+	private static class ProgramClassLoader extends ClassLoader {
+		private final Map<String, byte[]> classes;
+
+		ProgramClassLoader(Map<String, byte[]> classes) {
+			super(CompiledProgram.class.getClassLoader());
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] code = classes.get(name);
+			if(code == null)
+				throw new ClassNotFoundException(name);
+			return defineClass(name, code, 0, code.length);
+		}
+	}
+
+	private volatile ProgramClassLoader loader;
+	private volatile boolean closed = false;
+	private final ConcurrentHashMap<String, MethodHandle> invokers = new ConcurrentHashMap<String, MethodHandle>();
+
+	/** Loads the program consisting of the given classes, as returned by {@link Compiler#compile(Iterable)}. */
+	public CompiledProgram(Map<String, byte[]> classes) {
+		this.loader = new ProgramClassLoader(new HashMap<String, byte[]>(classes));
+	}
+
+	/**
+	 * Returns a method handle invoking the given public function, whose type is given by its return and
+	 * parameter types. The handle can be called with {@link MethodHandle#invokeExact(Object...)}.
+	 *
+	 * @throws IllegalStateException if the program has been closed
+	 * @throws IllegalArgumentException if there is no such function
+	 */
+	public MethodHandle getInvoker(final String module, final String function, Class<?> ret, Class<?>... parms) {
+		final MethodType type = MethodType.methodType(ret, parms);
+		return invokers.computeIfAbsent(module + "." + function + type, new Function<String, MethodHandle>() {
+			@Override
+			public MethodHandle apply(String key) {
+				// checked while the new entry is reserved, so no entry can be added after close() has cleared the map
+				if(closed)
+					throw new IllegalStateException("program has been closed");
+				return lookup(module, function, type);
+			}
+		});
+	}
+
+	private MethodHandle lookup(String module, String function, MethodType type) {
+		try {
+			return MethodHandles.publicLookup().findStatic(loader.loadClass(module), function, type);
+		} catch(ClassNotFoundException e) {
+			throw new IllegalArgumentException("no such module: " + module, e);
+		} catch(NoSuchMethodException e) {
+			throw new IllegalArgumentException("no such function: " + module + "." + function + type, e);
+		} catch(IllegalAccessException e) {
+			throw new IllegalArgumentException("function is not public: " + module + "." + function, e);
+		}
+	}
+
+	/**
+	 * Invokes the given public function with the given arguments, boxing and unboxing as necessary.
+	 * Slower than calling an invoker directly, but convenient when the types are only known at runtime.
+	 */
+	public Object invoke(String module, String function, Class<?> ret, Class<?>[] parms, Object... args) throws Throwable {
+		return getInvoker(module, function, ret, parms).invokeWithArguments(args);
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Drops the program's class loader and invokers; its classes can be unloaded as soon as no more
+	 * references to them or to invokers obtained earlier remain.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		invokers.clear();
+		loader = null;
+	}
+}
@@ -0,0 +1,204 @@
+package driver;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lexer.Lexer;
+import lexer.LexicalException;
+import lexer.TokenBuffer;
+import parser.Parser;
+import soot.SootClass;
+import soot.SootMethod;
+import ast.ASTNode;
+import ast.List;
+import ast.Module;
+import ast.Program;
+import backend.ClassFileGenerator;
+import backend.PassManager;
+import backend.ProgramCodeGenerator;
+import driver.CompilerMetrics.Counter;
+import driver.CompilerMetrics.Phase;
+import frontend.ParallelParser;
+
+/**
+ * The compiler pipeline: lexing, parsing, name/type/flow checking, code generation, optimisation and
+ * class file assembly. Every phase is measured through {@link CompilerMetrics}.
+ */
+public class Compiler {
+	/**
+	 * Soot keeps its state in global singletons, so code that sets up, generates or assembles classes
+	 * must hold this lock when compilers may run on more than one thread of the JVM.
+	 */
+	public static final ReentrantLock SOOT_LOCK = new ReentrantLock();
+
+	private final CompilerMetrics metrics;
+	private PassManager passes = new PassManager(PassManager.Level.O0);
+	private boolean measureLexing = false;
+
+	public Compiler() {
+		this(CompilerMetrics.v());
+	}
+
+	public Compiler(CompilerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Lexes and parses the given module sources and assembles the resulting modules into a program.
+	 *
+	 * Since the parser pulls tokens from the lexer on demand, the time of the parsing phase includes the
+	 * lexer's scanning, and tokens are counted as the parser consumes them. The lexing phase is only
+	 * measured if {@link #setMeasureLexing(boolean)} is turned on.
+	 */
+	public Program parse(Iterable<String> sources) throws IOException, CompilationException {
+		TokenBuffer tokens = measureLexing ? new TokenBuffer() : null;
+		List<Module> modules = new List<Module>();
+		for(String src : sources) {
+			try {
+				if(measureLexing) {
+					try(CompilerMetrics.Timer t = metrics.time(Phase.LEX)) {
+						tokens.clear();
+						new Lexer(new StringReader(src)).tokenize(tokens);
+					}
+				}
+				Lexer lexer = new Lexer(new StringReader(src));
+				try(CompilerMetrics.Timer t = metrics.time(Phase.PARSE)) {
+					modules.add((Module)new Parser().parse(lexer));
+				} finally {
+					metrics.count(Counter.TOKENS, lexer.getTokenCount());
+				}
+			} catch(beaver.Parser.Exception e) {
+				throw diagnostic(e.getMessage());
+			} catch(LexicalException e) {
+				throw diagnostic(e.getMessage());
+			}
+		}
+		return new Program(modules);
+	}
+
+	private static CompilationException diagnostic(String message) {
+		ArrayList<String> diagnostics = new ArrayList<String>();
+		diagnostics.add(message);
+		return new CompilationException(diagnostics);
+	}
+
+	/**
+	 * Like {@link #parse(Iterable)}, but lexes and parses the sources concurrently on the given pool.
+	 * The modules of the program are in source order; if any source fails to parse, the exception
+	 * carries the errors of all sources.
+	 *
+	 * Lexing and parsing are interleaved in the worker tasks, so both are measured as the parsing phase.
+	 */
+	public Program parse(Iterable<String> sources, ForkJoinPool pool) throws CompilationException {
+		ParallelParser.Result res;
+		try(CompilerMetrics.Timer t = metrics.time(Phase.PARSE)) {
+			res = new ParallelParser(pool).parse(sources);
+		}
+		if(res.hasErrors())
+			throw new CompilationException(new ArrayList<String>(res.getErrors()));
+		return res.getProgram();
+	}
+
+	/**
+	 * Runs name, type and flow checks on the given program; throws an exception if there are errors.
+	 *
+	 * The checks run sequentially. The AST's lazily computed attributes, such as <code>VarName.decl()</code>
+	 * and <code>Call.getCallTarget()</code>, and its error collection are not generated thread-safe, so
+	 * modules of one program cannot be checked concurrently.
+	 */
+	public void check(Program prog) throws CompilationException {
+		metrics.count(Counter.AST_NODES, countNodes(prog));
+		try(CompilerMetrics.Timer t = metrics.time(Phase.NAMECHECK)) {
+			prog.namecheck();
+		}
+		try(CompilerMetrics.Timer t = metrics.time(Phase.TYPECHECK)) {
+			prog.typecheck();
+		}
+		try(CompilerMetrics.Timer t = metrics.time(Phase.FLOWCHECK)) {
+			prog.flowcheck();
+		}
+		if(prog.hasErrors()) {
+			ArrayList<String> diagnostics = new ArrayList<String>();
+			for(Object error : prog.getErrors())
+				diagnostics.add(error.toString());
+			throw new CompilationException(diagnostics);
+		}
+	}
+
+	private static int countNodes(ASTNode<?> node) {
+		int n = 1;
+		for(int i=0;i<node.getNumChild();++i)
+			n += countNodes(node.getChild(i));
+		return n;
+	}
+
+	/**
+	 * Generates Soot classes for the given (checked) program, and runs the optimisation passes
+	 * of this compiler's pass manager over them.
+	 *
+	 * Code generation always runs sequentially: the method bodies are built through Soot's global
+	 * <code>Scene</code>, whose type and class tables are not safe to update from several threads. Only
+	 * the assembly of the generated classes can run in parallel; see {@link #assemble(Iterable, ForkJoinPool)}.
+	 */
+	public Iterable<SootClass> generate(Program prog) {
+		Iterable<SootClass> classes;
+		try(CompilerMetrics.Timer t = metrics.time(Phase.CODEGEN)) {
+			classes = new ProgramCodeGenerator().generate(prog);
+		}
+		for(SootClass klass : classes)
+			for(SootMethod method : klass.getMethods())
+				if(method.hasActiveBody())
+					metrics.count(Counter.JIMPLE_UNITS, method.getActiveBody().getUnits().size());
+		try(CompilerMetrics.Timer t = metrics.time(Phase.OPTIMIZE)) {
+			passes.run(classes);
+		}
+		return classes;
+	}
+
+	/**
+	 * Assembles the given classes into class files; if <code>pool</code> is not <code>null</code>,
+	 * the classes are assembled in parallel on that pool.
+	 */
+	public Map<String, byte[]> assemble(Iterable<SootClass> classes, ForkJoinPool pool) {
+		try(CompilerMetrics.Timer t = metrics.time(Phase.ASSEMBLY)) {
+			return pool == null ? ClassFileGenerator.generate(classes) : ClassFileGenerator.generate(classes, pool);
+		}
+	}
+
+	/** Compiles the program with the given module sources; returns a map from class names to class files. */
+	public Map<String, byte[]> compile(Iterable<String> sources) throws IOException, CompilationException {
+		Program prog = parse(sources);
+		check(prog);
+		Map<String, byte[]> res = assemble(generate(prog), null);
+		metrics.emitCounters();
+		return res;
+	}
+
+	/**
+	 * Sets whether {@link #parse(Iterable)} runs the lexer over every source on its own first, in compact
+	 * mode, to measure the lexing phase separately from parsing. This costs an extra pass over every
+	 * source and is off by default.
+	 */
+	public void setMeasureLexing(boolean measureLexing) {
+		this.measureLexing = measureLexing;
+	}
+
+	/** Sets the pass manager used to optimise generated code. */
+	public void setPassManager(PassManager passes) {
+		this.passes = passes;
+	}
+
+	/** The pass manager used to optimise generated code; by default, it runs at level O0. */
+	public PassManager getPassManager() {
+		return passes;
+	}
+
+	/** The metrics object used by this compiler. */
+	public CompilerMetrics getMetrics() {
+		return metrics;
+	}
+}
@@ -0,0 +1,231 @@
+package bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import lexer.Lexer;
+import parser.Parser;
+import soot.SootClass;
+import ast.List;
+import ast.Module;
+import ast.Program;
+import backend.ClassFileGenerator;
+import backend.ProgramCodeGenerator;
+import frontend.Token;
+
+/**
+ * JMH benchmarks for the individual phases of the compiler: lexing, parsing, name/type/flow checking,
+ * code generation and class file assembly.
+ *
+ * Every benchmark runs over a corpus made up of the programs from the compiler tests plus a chain of
+ * synthetic modules, whose number is controlled by the <code>modules</code> parameter. Phases that
+ * depend on earlier phases get their input prepared afresh before each invocation, since the AST caches
+ * attribute values and code generation registers classes with Soot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompilerBenchmarks {
+	/** Programs from the compiler tests; every program is a single module named Test. */
+	private static final String[] TEST_PROGRAMS = {
+		"module Test { public int f() { return 23+19; } }",
+		"module Test { public int f() { return ((10 + 5) * 3) / (2 - 1); } }",
+		"module Test { public int f() { return g(10, 20); } public int g(int x, int y) { return x + y; } }",
+		"module Test { public int f() { int[] arr; arr=[7, 14, 21]; return arr[2]; } }",
+		"module Test { public type string = \"java.lang.String\"; public string f() { string x; x = \"Hello World\"; return x; } }",
+		"module Test { public int f() { int i; int s; i = 0; s = 0; while(i != 10) { s = s + i; i = i + 1; } return s; } }",
+		"module Test { public int f() { int i; i = 0; while(true) { if(i == 7) break; i = i + 1; } return i; } }",
+	};
+
+	/** The number of synthetic modules added to every program of the corpus. */
+	@Param({ "1", "10", "100" })
+	public int modules;
+
+	/** The corpus: every element is the list of module sources making up one program. */
+	private final ArrayList<ArrayList<String>> corpus = new ArrayList<ArrayList<String>>();
+
+	/** Generates the source of the i-th synthetic module, which imports its predecessor. */
+	static String syntheticModule(int i) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("module M").append(i).append(" {\n");
+		if(i > 0)
+			sb.append("  import M").append(i-1).append(";\n");
+		sb.append("  public int[] table").append(i).append(";\n");
+		for(int j=0;j<10;++j) {
+			sb.append("  public int f").append(i).append('_').append(j).append("(int x) {\n");
+			sb.append("    int i; int s;\n    i = 0; s = 0;\n");
+			sb.append("    while(i < x) {\n      if(i * 2 > x - 3) s = s + i; else s = s - 1;\n");
+			if(i > 0)
+				sb.append("      s = s + f").append(i-1).append('_').append(j).append("(i / 2);\n");
+			sb.append("      i = i + 1;\n    }\n    return s;\n  }\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	@Setup(Level.Trial)
+	public void setupCorpus() {
+		corpus.clear();
+		for(String test : TEST_PROGRAMS) {
+			ArrayList<String> program = new ArrayList<String>();
+			program.add(test);
+			for(int i=0;i<modules;++i)
+				program.add(syntheticModule(i));
+			corpus.add(program);
+		}
+	}
+
+	private ArrayList<Program> parseAll() throws Exception {
+		ArrayList<Program> res = new ArrayList<Program>();
+		for(ArrayList<String> program : corpus) {
+			List<Module> mods = new List<Module>();
+			for(String src : program)
+				mods.add((Module)new Parser().parse(new Lexer(new StringReader(src))));
+			res.add(new Program(mods));
+		}
+		return res;
+	}
+
+	@Benchmark
+	public int lex() throws IOException {
+		int n = 0;
+		for(ArrayList<String> program : corpus) {
+			for(String src : program) {
+				Lexer lexer = new Lexer(new StringReader(src));
+				for(Token tk = lexer.nextToken(); !tk.isEOF(); tk = lexer.nextToken())
+					++n;
+			}
+		}
+		return n;
+	}
+
+	@Benchmark
+	public ArrayList<Program> parse() throws Exception {
+		return parseAll();
+	}
+
+	@State(Scope.Thread)
+	public static class Parsed {
+		ArrayList<Program> programs;
+
+		@Setup(Level.Invocation)
+		public void setup(CompilerBenchmarks b) throws Exception {
+			programs = b.parseAll();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class NameChecked {
+		ArrayList<Program> programs;
+
+		@Setup(Level.Invocation)
+		public void setup(CompilerBenchmarks b) throws Exception {
+			programs = b.parseAll();
+			for(Program prog : programs)
+				prog.namecheck();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class TypeChecked {
+		ArrayList<Program> programs;
+
+		@Setup(Level.Invocation)
+		public void setup(CompilerBenchmarks b) throws Exception {
+			programs = b.parseAll();
+			for(Program prog : programs) {
+				prog.namecheck();
+				prog.typecheck();
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Checked {
+		ArrayList<Program> programs;
+
+		@Setup(Level.Invocation)
+		public void setup(CompilerBenchmarks b) throws Exception {
+			programs = b.checkAll();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Generated {
+		ArrayList<Iterable<SootClass>> classes;
+
+		@Setup(Level.Invocation)
+		public void setup(CompilerBenchmarks b) throws Exception {
+			classes = new ArrayList<Iterable<SootClass>>();
+			for(Program prog : b.checkAll())
+				classes.add(new ProgramCodeGenerator().generate(prog));
+		}
+	}
+
+	private ArrayList<Program> checkAll() throws Exception {
+		ArrayList<Program> res = parseAll();
+		for(Program prog : res) {
+			prog.namecheck();
+			prog.typecheck();
+			prog.flowcheck();
+			if(prog.hasErrors())
+				throw new IllegalStateException(prog.getErrors().iterator().next().toString());
+		}
+		return res;
+	}
+
+	@Benchmark
+	public void namecheck(Parsed in, Blackhole bh) {
+		for(Program prog : in.programs) {
+			prog.namecheck();
+			bh.consume(prog);
+		}
+	}
+
+	@Benchmark
+	public void typecheck(NameChecked in, Blackhole bh) {
+		for(Program prog : in.programs) {
+			prog.typecheck();
+			bh.consume(prog);
+		}
+	}
+
+	@Benchmark
+	public void flowcheck(TypeChecked in, Blackhole bh) {
+		for(Program prog : in.programs) {
+			prog.flowcheck();
+			bh.consume(prog);
+		}
+	}
+
+	@Benchmark
+	public void codegen(Checked in, Blackhole bh) {
+		for(Program prog : in.programs)
+			bh.consume(new ProgramCodeGenerator().generate(prog));
+	}
+
+	@Benchmark
+	public void assemble(Generated in, Blackhole bh) {
+		for(Iterable<SootClass> klasses : in.classes)
+			bh.consume(ClassFileGenerator.generate(klasses));
+	}
+}
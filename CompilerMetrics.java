@@ -0,0 +1,148 @@
+package driver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects performance metrics for the phases of the compiler: wall time and allocated bytes per phase,
+ * plus a number of counters. All metrics are cumulative until {@link #reset()} is called; phase timings
+ * are additionally emitted as JFR events ({@link PhaseEvent}), and {@link #emitCounters()} emits the
+ * current counter values as a {@link CountersEvent}.
+ *
+ * Like Soot's own singletons, there is one global instance, available through {@link #v()}. Allocated
+ * bytes are measured on the thread running a phase only.
+ */
+public class CompilerMetrics {
+	/** The phases of the compiler. */
+	public enum Phase {
+		LEX, PARSE, NAMECHECK, TYPECHECK, FLOWCHECK, CODEGEN, OPTIMIZE, ASSEMBLY
+	}
+
+	/** The counters maintained by the compiler. */
+	public enum Counter {
+		/** Tokens produced by the lexer. */
+		TOKENS,
+		/** AST nodes in the checked programs. */
+		AST_NODES,
+		/** Jimple units in the generated method bodies. */
+		JIMPLE_UNITS,
+		/** Temporaries allocated during expression code generation. */
+		TEMPS,
+		/** Method references created for calls. */
+		METHOD_REFS
+	}
+
+	private static final CompilerMetrics instance = new CompilerMetrics();
+
+	private final AtomicLongArray wallTime = new AtomicLongArray(Phase.values().length),
+								  allocated = new AtomicLongArray(Phase.values().length),
+								  counters = new AtomicLongArray(Counter.values().length);
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private CompilerMetrics() {}
+
+	/** Returns the global metrics object. */
+	public static CompilerMetrics v() {
+		return instance;
+	}
+
+	/** Measures a single run of a phase; closing it records the measurement. */
+	public class Timer implements AutoCloseable {
+		private final Phase phase;
+		private final long startTime, startAllocated;
+		private final PhaseEvent event = new PhaseEvent();
+
+		private Timer(Phase phase) {
+			this.phase = phase;
+			this.event.begin();
+			this.startAllocated = allocatedBytes();
+			this.startTime = System.nanoTime();
+		}
+
+		@Override
+		public void close() {
+			long time = System.nanoTime() - startTime;
+			long bytes = allocatedBytes() - startAllocated;
+			wallTime.addAndGet(phase.ordinal(), time);
+			allocated.addAndGet(phase.ordinal(), bytes);
+			event.end();
+			if(event.shouldCommit()) {
+				event.phase = phase.name();
+				event.allocatedBytes = bytes;
+				event.commit();
+			}
+		}
+	}
+
+	private long allocatedBytes() {
+		if(threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+	}
+
+	/** Starts measuring a run of the given phase. */
+	public Timer time(Phase phase) {
+		return new Timer(phase);
+	}
+
+	/** Increments the given counter by the given amount. */
+	public void count(Counter counter, long delta) {
+		counters.addAndGet(counter.ordinal(), delta);
+	}
+
+	/** Increments the given counter by one. */
+	public void count(Counter counter) {
+		count(counter, 1);
+	}
+
+	/** The total wall time spent in the given phase, in nanoseconds. */
+	public long getWallTime(Phase phase) {
+		return wallTime.get(phase.ordinal());
+	}
+
+	/** The total number of bytes allocated in the given phase. */
+	public long getAllocatedBytes(Phase phase) {
+		return allocated.get(phase.ordinal());
+	}
+
+	/** The current value of the given counter. */
+	public long getCount(Counter counter) {
+		return counters.get(counter.ordinal());
+	}
+
+	/** Emits the current counter values as a JFR event. */
+	public void emitCounters() {
+		CountersEvent event = new CountersEvent();
+		if(event.shouldCommit()) {
+			event.tokens = getCount(Counter.TOKENS);
+			event.astNodes = getCount(Counter.AST_NODES);
+			event.jimpleUnits = getCount(Counter.JIMPLE_UNITS);
+			event.temps = getCount(Counter.TEMPS);
+			event.methodRefs = getCount(Counter.METHOD_REFS);
+			event.commit();
+		}
+	}
+
+	/** Resets all metrics to zero. */
+	public void reset() {
+		for(int i=0;i<wallTime.length();++i) {
+			wallTime.set(i, 0);
+			allocated.set(i, 0);
+		}
+		for(int i=0;i<counters.length();++i)
+			counters.set(i, 0);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(Phase phase : Phase.values())
+			sb.append(String.format("%-10s %10.3f ms %14d bytes%n", phase.name().toLowerCase(),
+					getWallTime(phase) / 1e6, getAllocatedBytes(phase)));
+		for(Counter counter : Counter.values())
+			sb.append(String.format("%-12s %12d%n", counter.name().toLowerCase(), getCount(counter)));
+		return sb.toString();
+	}
+}
@@ -1,27 +1,43 @@
 package test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.PrintWriter;
-import java.io.StringReader;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
-import backend.ProgramCodeGenerator;
+import backend.LibraryStubs;
+import backend.PassManager;
+import driver.BuildCache;
+import driver.CompilationException;
+import driver.CompiledProgram;
+import driver.CompileServer;
+import driver.Compiler;
+import driver.CompilerMetrics;
+import driver.IncrementalCompiler;
+import driver.ProgramHost;
 
 import org.junit.Assert;
-import lexer.Lexer;
-import parser.Parser;
 import soot.Printer;
+import soot.Scene;
 import soot.SootClass;
+import soot.SootField;
+import soot.Unit;
 import soot.jimple.JasminClass;
+import soot.jimple.Stmt;
 import soot.util.JasminOutputStream;
-import ast.List;
-import ast.Module;
 import ast.Program;
 
 /**
@@ -32,6 +48,12 @@ public class CompilerTests {
 	// set this flag to true to dump generated Jimple code to standard output
 	private static final boolean DEBUG = false;
 	
+	// set this flag to true to assemble class files through Jasmin instead of ClassFileGenerator
+	private static final boolean USE_JASMIN = false;
+	
+	// the optimisation level to compile test programs with
+	private static final PassManager.Level OPT_LEVEL = PassManager.Level.O2;
+	
 	/**
 	 * A simple class loader that allows us to directly load compiled classes.
 	 */
@@ -65,39 +87,37 @@ public class CompilerTests {
 	 * @param parm_types the parameter types of the main function
 	 * @param args arguments to pass to the main method
 	 * @param expected expected result
+	 * @param parallel whether to parse and assemble the program in parallel
 	 */
-	private void runtest(String[] modules_src, String main_module, String main_function, Class<?>[] parm_types, Object[] args, Object expected) {
+	private void runtest(String[] modules_src, String main_module, String main_function, Class<?>[] parm_types, Object[] args, Object expected, boolean parallel) {
 		try {
-			List<Module> modules = new List<Module>();
-			for(String module_src : modules_src) {
-				Parser parser = new Parser();
-				Module module = (Module)parser.parse(new Lexer(new StringReader(module_src)));
-				modules.add(module);
-			}
-			Program prog = new Program(modules);
-			
-			prog.namecheck();
-			prog.typecheck();
-			prog.flowcheck();
-			if(prog.hasErrors()) {
-				Assert.fail(prog.getErrors().iterator().next().toString());
-			}
+			Compiler compiler = new Compiler();
+			compiler.setPassManager(new PassManager(OPT_LEVEL));
+			ForkJoinPool pool = parallel ? ForkJoinPool.commonPool() : null;
+			Program prog = parallel ? compiler.parse(Arrays.asList(modules_src), pool) : compiler.parse(Arrays.asList(modules_src));
+			compiler.check(prog);
 			
 			CompiledClassLoader loader = new CompiledClassLoader();
 			try {
-				for(SootClass klass : new ProgramCodeGenerator().generate(prog)) {
+				Iterable<SootClass> classes = compiler.generate(prog);
+				for(SootClass klass : classes) {
 					if(DEBUG) {
 						PrintWriter stdout_pw = new PrintWriter(System.out);
 						Printer.v().printTo(klass, stdout_pw);
 						stdout_pw.flush();
 					}
 
-					String name = klass.getName();
-					ByteArrayOutputStream baos = new ByteArrayOutputStream();
-					PrintWriter pw = new PrintWriter(new JasminOutputStream(baos));
-					new JasminClass(klass).print(pw);
-					pw.flush();
-					loader.addClass(name, baos.toByteArray());
+					if(USE_JASMIN) {
+						ByteArrayOutputStream baos = new ByteArrayOutputStream();
+						PrintWriter pw = new PrintWriter(new JasminOutputStream(baos));
+						new JasminClass(klass).print(pw);
+						pw.flush();
+						loader.addClass(klass.getName(), baos.toByteArray());
+					}
+				}
+				if(!USE_JASMIN) {
+					for(Map.Entry<String, byte[]> entry : compiler.assemble(classes, pool).entrySet())
+						loader.addClass(entry.getKey(), entry.getValue());
 				}
 
 				Class<?> testclass = loader.loadClass(main_module);
@@ -119,7 +139,7 @@ public class CompilerTests {
 
 	/** Convenience wrapper for runtest with only a single module. Other arguments are the same .*/
 	private void runtest(String string, String classname, String methodname, Class<?>[] parmTypes, Object[] args, Object expected) {
-		runtest(new String[] { string }, classname, methodname, parmTypes, args, expected);
+		runtest(new String[] { string }, classname, methodname, parmTypes, args, expected, false);
 	}
 
 	@Test public void testAddition() {
@@ -223,4 +243,421 @@ public class CompilerTests {
         runtest("module Test { public int f() { return (5 + 3) * (2 + 6); } }", "Test", "f", new Class<?>[0], new Object[0], 64);
         runtest("module Test { public int f() { return (100 - 50) / 5 + (8 * 4); } }", "Test", "f", new Class<?>[0], new Object[0], 42);
     }
+
+    @Test
+    public void testConditions() {
+        runtest("module Test { public int f(int x) { if(x < 10) return 1; else return 0; } }", "Test", "f", new Class<?>[] { int.class }, new Object[] { 5 }, 1);
+        runtest("module Test { public int f(int x) { if(x >= 10) return 1; else return 0; } }", "Test", "f", new Class<?>[] { int.class }, new Object[] { 5 }, 0);
+        runtest("module Test { public int f(boolean b) { if(b) return 1; return 0; } }", "Test", "f", new Class<?>[] { boolean.class }, new Object[] { true }, 1);
+        runtest("module Test { public int f() { int i; int s; i = 0; s = 0; while(i != 10) { s = s + i; i = i + 1; } return s; } }", "Test", "f", new Class<?>[0], new Object[0], 45);
+        runtest("module Test { public int f() { int i; i = 0; while(true) { if(i == 7) break; i = i + 1; } return i; } }", "Test", "f", new Class<?>[0], new Object[0], 7);
+        runtest("module Test { public int f() { while(false) { return 1; } return 0; } }", "Test", "f", new Class<?>[0], new Object[0], 0);
+    }
+
+    @Test
+    public void testConstantFolding() {
+        runtest("module Test { public int f(int x) { return x * 1 + 0; } }", "Test", "f", new Class<?>[] { int.class }, new Object[] { 42 }, 42);
+        runtest("module Test { public int f(int x) { return 0 + x * 0 - 0; } }", "Test", "f", new Class<?>[] { int.class }, new Object[] { 42 }, 0);
+        runtest("module Test { public int f(int x) { return -(3 - 10) * x / 1; } }", "Test", "f", new Class<?>[] { int.class }, new Object[] { 6 }, 42);
+        runtest("module Test { public boolean f() { return 2 * 3 < 7; } }", "Test", "f", new Class<?>[0], new Object[0], true);
+        runtest("module Test { public int f() { if(1 + 1 == 3) return 1; return 2; } }", "Test", "f", new Class<?>[0], new Object[0], 2);
+    }
+
+    @Test
+    public void testParallelAssembly() {
+        runtest(new String[] {
+                    "module A { import B; public int f(int x) { return g(x) * 2; } }",
+                    "module B { public int g(int x) { return x + 1; } }"
+                }, "A", "f", new Class<?>[] { int.class }, new Object[] { 20 }, 42, true);
+    }
+
+    @Test
+    public void testBuildCache() throws Exception {
+        String[] srcs = {
+            "module A { import B; public int f(int x) { return g(x) * 2; } }",
+            "module B { public int g(int x) { return x + 1; } }"
+        };
+        File dir = Files.createTempDirectory("buildcache").toFile();
+        BuildCache cache = new BuildCache(dir);
+        IncrementalCompiler compiler = new IncrementalCompiler(cache);
+        compiler.compile(Arrays.asList(srcs));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+
+        // changing the implementation of B does not invalidate A
+        srcs[1] = "module B { public int g(int x) { return 1 + x; } }";
+        cache.resetStatistics();
+        Map<String, byte[]> classes = compiler.compile(Arrays.asList(srcs));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+
+        CompiledClassLoader loader = new CompiledClassLoader();
+        try {
+            for(Map.Entry<String, byte[]> entry : classes.entrySet())
+                loader.addClass(entry.getKey(), entry.getValue());
+            Method method = loader.loadClass("A").getMethod("f", int.class);
+            Assert.assertEquals(42, method.invoke(null, 20));
+        } finally {
+            loader.close();
+        }
+
+        // changing the interface of B invalidates A as well
+        srcs[1] = "module B { public int g(int x) { return x + 1; } public int h() { return 0; } }";
+        cache.resetStatistics();
+        compiler.compile(Arrays.asList(srcs));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testBuildCacheIndirectImports() throws Exception {
+        String[] srcs = {
+            "module A { import B; public int f() { foo(); return 1; } }",
+            "module B { import C; T t; public T foo() { return t; } }",
+            "module C { public type T = \"java.lang.String\"; }"
+        };
+        File dir = Files.createTempDirectory("buildcache").toFile();
+        BuildCache cache = new BuildCache(dir);
+        IncrementalCompiler compiler = new IncrementalCompiler(cache);
+        compiler.compile(Arrays.asList(srcs));
+
+        // changing the type declared in C changes the descriptor of B's foo, so A is recompiled as well
+        srcs[2] = "module C { public type T = \"java.lang.Object\"; }";
+        cache.resetStatistics();
+        Map<String, byte[]> classes = compiler.compile(Arrays.asList(srcs));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(3, cache.getMisses());
+
+        CompiledClassLoader loader = new CompiledClassLoader();
+        try {
+            for(Map.Entry<String, byte[]> entry : classes.entrySet())
+                loader.addClass(entry.getKey(), entry.getValue());
+            Method method = loader.loadClass("A").getMethod("f");
+            Assert.assertEquals(1, method.invoke(null));
+        } finally {
+            loader.close();
+        }
+
+        // two modules of the same name are rejected instead of one silently replacing the other
+        try {
+            compiler.compile(Arrays.asList(srcs[0], srcs[1], srcs[2], "module B { }"));
+            Assert.fail("duplicate module was accepted");
+        } catch(CompilationException e) {
+            Assert.assertEquals("duplicate module B", e.getDiagnostics().get(0));
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        CompilerMetrics metrics = CompilerMetrics.v();
+        metrics.reset();
+        Compiler compiler = new Compiler();
+        compiler.setMeasureLexing(true);
+        compiler.compile(Arrays.asList("module Test { public int f() { return g(42); } public int g(int x) { return x; } }"));
+        Assert.assertEquals(30, metrics.getCount(CompilerMetrics.Counter.TOKENS));
+        Assert.assertEquals(1, metrics.getCount(CompilerMetrics.Counter.METHOD_REFS));
+        Assert.assertTrue(metrics.getCount(CompilerMetrics.Counter.AST_NODES) > 0);
+        Assert.assertTrue(metrics.getCount(CompilerMetrics.Counter.JIMPLE_UNITS) > 0);
+        for(CompilerMetrics.Phase phase : CompilerMetrics.Phase.values())
+            Assert.assertTrue(metrics.getWallTime(phase) > 0);
+
+        // without a separate lexing pass, tokens are still counted as the parser consumes them
+        metrics.reset();
+        new Compiler().compile(Arrays.asList("module Test { public int f() { return g(42); } public int g(int x) { return x; } }"));
+        Assert.assertEquals(30, metrics.getCount(CompilerMetrics.Counter.TOKENS));
+        Assert.assertEquals(0, metrics.getWallTime(CompilerMetrics.Phase.LEX));
+    }
+
+    @Test
+    public void testLoopInvariants() {
+        runtest("module Test { public int f(int a, int b) { int i; int s; i = 0; s = 0; while(i < 10) { s = s + a * b - i; i = i + 1; } return s; } }", "Test", "f", new Class<?>[] { int.class, int.class }, new Object[] { 2, 3 }, 15);
+        runtest("module Test { public int f(int a) { int i; int s; i = 0; s = 0; while(i < 3) { int j; j = 0; while(j < a + 1) { s = s + (a + 1) * i; j = j + 1; } i = i + 1; } return s; } }", "Test", "f", new Class<?>[] { int.class }, new Object[] { 1 }, 12);
+        runtest("module Test { public int f(int a) { int i; i = 0; while(i < a * 2) { a = a - 1; i = i + 1; } return i; } }", "Test", "f", new Class<?>[] { int.class }, new Object[] { 6 }, 4);
+        runtest("module Test { public int f(int a) { int s; s = 0; while(a * 2 > 100) { s = s + 1; } return s; } }", "Test", "f", new Class<?>[] { int.class }, new Object[] { 6 }, 0);
+    }
+
+    @Test
+    public void testConstantArrayTemplate() {
+        runtest("module Test { public int f() { int[] a; a = [1, 2, 3, 4, 5, 6, 7, -8, 9, 10]; return a[7] + a[9]; } }", "Test", "f", new Class<?>[0], new Object[0], 2);
+        runtest("module Test { public int f() { int[] a; int[] b; a = g(); a[0] = 42; b = g(); return b[0] + a[0]; } " +
+                "public int[] g() { return [1, 2, 3, 4, 5, 6, 7, 8, 9, 10]; } }", "Test", "f", new Class<?>[0], new Object[0], 43);
+    }
+
+    @Test
+    public void testConstantArrayTemplateInLoopCondition() throws Exception {
+        Compiler compiler = new Compiler();
+        Program prog = compiler.parse(Arrays.asList(
+                "module Test { public int f(int n) { int i; i = 0; while(i < first([5, 2, 3, 4, 5, 6, 7, 8]) + n) { i = i + 1; } return i; } " +
+                "public int first(int[] a) { return a[0]; } }"));
+        compiler.check(prog);
+        Iterable<SootClass> classes = compiler.generate(prog);
+
+        // the rotated loop generates its condition twice, but the literal still gets a single template
+        int templates = 0;
+        for(SootClass klass : classes)
+            for(SootField field : klass.getFields())
+                if(field.getName().startsWith("$const"))
+                    ++templates;
+        Assert.assertEquals(1, templates);
+
+        CompiledClassLoader loader = new CompiledClassLoader();
+        try {
+            for(Map.Entry<String, byte[]> entry : compiler.assemble(classes, null).entrySet())
+                loader.addClass(entry.getKey(), entry.getValue());
+            Method method = loader.loadClass("Test").getMethod("f", int.class);
+            Assert.assertEquals(6, method.invoke(null, 1));
+        } finally {
+            loader.close();
+        }
+    }
+
+    @Test
+    public void testStrengthReduction() {
+        int[] xs = { 0, 1, 7, 8, 9, -1, -7, -8, -9, 2147483647, -2147483648 };
+        String src = "module Test { public int f(int x) { return x * 8 + x * -4 + x * 3 + x * 7 + x / 4 + x / -8 + x % 8 + x % -4 + x / 1 + x % 1; } }";
+        for(int x : xs)
+            runtest(src, "Test", "f", new Class<?>[] { int.class }, new Object[] { x },
+                    x * 8 + x * -4 + x * 3 + x * 7 + x / 4 + x / -8 + x % 8 + x % -4 + x / 1 + x % 1);
+    }
+
+    @Test
+    public void testInlining() {
+        runtest(new String[] {
+                    "module A { import B; public int f(int x) { int i; int s; i = 0; s = 0; while(i < x) { s = s + twice(i) + get(); i = i + 1; } return s; } }",
+                    "module B { public int k; public int twice(int x) { return x * 2; } public int get() { return k + 1; } " +
+                    "public int fact(int n) { if(n <= 1) return 1; return n * fact(n - 1); } }"
+                }, "A", "f", new Class<?>[] { int.class }, new Object[] { 4 }, 16, false);
+        runtest("module Test { public int f() { return fact(5); } public int fact(int n) { if(n <= 1) return 1; return n * fact(n - 1); } }",
+                "Test", "f", new Class<?>[0], new Object[0], 120);
+    }
+
+    @Test
+    public void testInliningDecisions() throws Exception {
+        StringBuilder big = new StringBuilder();
+        for(int i=0;i<25;++i)
+            big.append("x = x + 1; ");
+        Compiler compiler = new Compiler();
+        compiler.setPassManager(new PassManager(PassManager.Level.O2));
+        Program prog = compiler.parse(Arrays.asList(
+                "module A { import B; public int f(int x) { return twice(x) + fact(x) + big(x); } }",
+                "module B { public int twice(int x) { return x * 2; } " +
+                "public int fact(int n) { if(n <= 1) return 1; return n * fact(n - 1); } " +
+                "public int big(int x) { " + big + "return x; } }"));
+        compiler.check(prog);
+        Iterable<SootClass> classes = compiler.generate(prog);
+
+        // the small callee is inlined; the self-recursive and the over-budget one stay calls
+        Set<String> callees = new HashSet<String>();
+        for(SootClass klass : classes)
+            if(klass.getName().equals("A"))
+                for(Unit u : klass.getMethodByName("f").getActiveBody().getUnits())
+                    if(((Stmt)u).containsInvokeExpr())
+                        callees.add(((Stmt)u).getInvokeExpr().getMethod().getName());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("fact", "big")), callees);
+
+        CompiledClassLoader loader = new CompiledClassLoader();
+        try {
+            for(Map.Entry<String, byte[]> entry : compiler.assemble(classes, null).entrySet())
+                loader.addClass(entry.getKey(), entry.getValue());
+            Method method = loader.loadClass("A").getMethod("f", int.class);
+            Assert.assertEquals(6 + 6 + 28, method.invoke(null, 3));
+        } finally {
+            loader.close();
+        }
+    }
+
+    @Test
+    public void testTailCalls() {
+        runtest("module Test { public int f(int n) { return sum(n, 0); } public int sum(int n, int acc) { if(n == 0) return acc; return sum(n - 1, acc + n); } }",
+                "Test", "f", new Class<?>[] { int.class }, new Object[] { 1000000 }, 1784293664);
+        runtest("module Test { public int f(int a, int b) { if(a >= b) return a - b; return f(b, a); } }",
+                "Test", "f", new Class<?>[] { int.class, int.class }, new Object[] { 3, 10 }, 7);
+        runtest("module Test { public int f(int a, int b, int c, int n) { if(n == 0) return a * 100 + b * 10 + c; return f(b, c, a, n - 1); } }",
+                "Test", "f", new Class<?>[] { int.class, int.class, int.class, int.class }, new Object[] { 1, 2, 3, 2 }, 312);
+        runtest("module Test { int n; public int f() { if(n == 5) return n; n = n + 1; return f(); } }",
+                "Test", "f", new Class<?>[0], new Object[0], 5);
+    }
+
+    @Test
+    public void testControlFlowCleanup() {
+        runtest("module Test { public int f(int x) { int s; s = 0; while(x > 0) { if(x > 5) { if(x > 10) s = s + 2; else s = s + 1; } else { x = x - 1; break; } x = x - 1; } return s; } }",
+                "Test", "f", new Class<?>[] { int.class }, new Object[] { 12 }, 9);
+        runtest("module Test { public int f(int x) { if(x > 0) return 1; else return 2; } }", "Test", "f", new Class<?>[] { int.class }, new Object[] { 3 }, 1);
+    }
+
+    @Test
+    public void testOptimizationLevels() throws Exception {
+        String src = "module Test { public int f(int n) { int i; int s; i = 0; s = 0; while(i < n) { s = s + sq(i) / 4; i = i + 1; } return s; } " +
+                     "public int sq(int x) { return x * x; } }";
+        for(PassManager.Level level : PassManager.Level.values()) {
+            PassManager passes = new PassManager(level);
+            Assert.assertEquals(level == PassManager.Level.O2, passes.getPass("inlining").isEnabled());
+            Assert.assertEquals(level != PassManager.Level.O0, passes.getPass("cfg-cleanup").isEnabled());
+            if(level == PassManager.Level.O2)
+                passes.setEnabled("local-packing", false);
+            Compiler compiler = new Compiler();
+            compiler.setPassManager(passes);
+            CompiledClassLoader loader = new CompiledClassLoader();
+            try {
+                for(Map.Entry<String, byte[]> entry : compiler.compile(Arrays.asList(src)).entrySet())
+                    loader.addClass(entry.getKey(), entry.getValue());
+                Method method = loader.loadClass("Test").getMethod("f", int.class);
+                Assert.assertEquals(70, method.invoke(null, 10));
+            } finally {
+                loader.close();
+            }
+            Assert.assertEquals(0L, (long)passes.getTimings().get("local-packing"));
+        }
+    }
+
+    @Test
+    public void testValueNumbering() {
+        runtest("module Test { public int f(int[] a, int i, int x, int y) { return a[i] + a[i] * a[i] + x * y - x * y; } }", "Test", "f",
+                new Class<?>[] { int[].class, int.class, int.class, int.class }, new Object[] { new int[] { 1, 5 }, 1, 6, 7 }, 30);
+        runtest("module Test { public int f(int[] a) { int x; x = a[0]; a[0] = 7; return x + a[0]; } }", "Test", "f",
+                new Class<?>[] { int[].class }, new Object[] { new int[] { 1 } }, 8);
+        runtest("module Test { public int f(int x) { int y; y = x * 2; x = x + 1; return y + x * 2; } }", "Test", "f",
+                new Class<?>[] { int.class }, new Object[] { 3 }, 14);
+        // expressions stay available across branches, unless invalidated on one of them
+        runtest("module Test { public int f(int[] a, int i, boolean b) { int x; int y; x = a[i] * 2; if(b) y = 1; else y = 2; return x + a[i] * 2 + y; } }", "Test", "f",
+                new Class<?>[] { int[].class, int.class, boolean.class }, new Object[] { new int[] { 3, 4 }, 1, true }, 17);
+        runtest("module Test { public int f(int[] a, int i, boolean b) { int x; x = a[i]; if(b) a[0] = 5; return x + a[i]; } }", "Test", "f",
+                new Class<?>[] { int[].class, int.class, boolean.class }, new Object[] { new int[] { 1, 2 }, 0, true }, 6);
+        runtest("module Test { public int f(int x, int n) { int s; s = x * 3; while(n > 0) { s = s + x * 3; x = x + 1; n = n - 1; } return s; } }", "Test", "f",
+                new Class<?>[] { int.class, int.class }, new Object[] { 1, 2 }, 12);
+    }
+
+    @Test
+    public void testDiamondImports() {
+        runtest(new String[] {
+                    "module A { import B; import C; public int f(int x) { return g(x) + h(x); } }",
+                    "module B { import D; public int g(int x) { return k(x) * 2; } }",
+                    "module C { import D; public int h(int x) { return k(x) + 1; } }",
+                    "module D { public int k(int x) { return x - 1; } }",
+                    "module E { }"
+                }, "A", "f", new Class<?>[] { int.class }, new Object[] { 5 }, 13, true);
+    }
+
+    @Test
+    public void testCompileServer() throws Exception {
+        CompileServer server = new CompileServer(PassManager.Level.O1);
+        int port = server.start(0);
+        try(CompileServer.Client client = new CompileServer.Client(port)) {
+            Map<String, byte[]> classes = client.compile(Arrays.asList(
+                    "module A { import B; public int f(int x) { return g(x) * 2; } }",
+                    "module B { public int g(int x) { return x + 1; } }"));
+            Assert.assertEquals(Arrays.asList("A", "B"), new ArrayList<String>(classes.keySet()));
+            // the same module names again, to check that the Soot context is reset between requests
+            Assert.assertEquals(1, client.compile(Arrays.asList("module A { public int f() { return 1; } }")).size());
+            try {
+                client.compile(Arrays.asList("module A { public int f() { return g(); } }"));
+                Assert.fail("expected a compilation error");
+            } catch(CompilationException e) {
+                Assert.assertFalse(e.getDiagnostics().isEmpty());
+            }
+            // lexical errors are reported as diagnostics, and the connection stays usable
+            try {
+                client.compile(Arrays.asList("module A { public int f() { return 1 # 2; } }"));
+                Assert.fail("expected a compilation error");
+            } catch(CompilationException e) {
+                Assert.assertTrue(e.getDiagnostics().get(0).contains("unexpected character"));
+            }
+            Assert.assertEquals(1, client.compile(Arrays.asList("module A { public int f() { return 1; } }")).size());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testLibraryStubs() throws Exception {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        LibraryStubs.write(Arrays.<Class<?>>asList(Object.class, String.class), snapshot);
+        CompileServer server = new CompileServer(PassManager.Level.O0, snapshot.toByteArray());
+        Map<String, byte[]> classes = server.compile(Arrays.asList(
+                "module Test { public type string = \"java.lang.String\"; public string f() { string x; x = \"Hello World\"; return x; } }"));
+        Assert.assertTrue(classes.containsKey("Test"));
+        // String's supertypes are part of the snapshot, too
+        Assert.assertTrue(Scene.v().containsClass("java.lang.CharSequence"));
+        Assert.assertFalse(Scene.v().getSootClass("java.lang.String").isPhantom());
+    }
+
+    @Test
+    public void testProgramHost() throws Throwable {
+        try(ProgramHost host = new ProgramHost()) {
+            CompiledProgram prog = host.load("p", Arrays.asList(
+                    "module A { import B; public int f(int x) { return g(x) * 2; } }",
+                    "module B { public int g(int x) { return x + 1; } }"));
+            MethodHandle f = prog.getInvoker("A", "f", int.class, int.class);
+            Assert.assertSame(f, prog.getInvoker("A", "f", int.class, int.class));
+            Assert.assertEquals(42, (int)f.invokeExact(20));
+            Assert.assertEquals(11, prog.invoke("B", "g", int.class, new Class<?>[] { int.class }, 10));
+
+            // reloading under the same name evicts the old program
+            CompiledProgram prog2 = host.load("p", Arrays.asList("module A { public int f(int x) { return x; } }"));
+            Assert.assertTrue(prog.isClosed());
+            Assert.assertEquals(7, (int)prog2.getInvoker("A", "f", int.class, int.class).invokeExact(7));
+            Assert.assertTrue(host.evict("p"));
+            Assert.assertNull(host.get("p"));
+            try {
+                prog2.getInvoker("A", "f", int.class, int.class);
+                Assert.fail("expected the program to be closed");
+            } catch(IllegalStateException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testBuildCacheOptions() throws Exception {
+        String[] srcs = {
+            "module A { import B; public int f(int x) { return g(x) * 2; } }",
+            "module B { public int g(int x) { return x + 1; } }"
+        };
+        File dir = Files.createTempDirectory("buildcache").toFile();
+        BuildCache cache = new BuildCache(dir);
+        new IncrementalCompiler(cache).compile(Arrays.asList(srcs));
+
+        // code generated at a different optimisation level is not reused
+        Compiler optimizing = new Compiler();
+        optimizing.setPassManager(new PassManager(PassManager.Level.O2));
+        IncrementalCompiler compiler = new IncrementalCompiler(cache, optimizing);
+        cache.resetStatistics();
+        compiler.compile(Arrays.asList(srcs));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+
+        // with inlining, changing the implementation of B invalidates A, whose code may contain B's
+        srcs[1] = "module B { public int g(int x) { return x + 2; } }";
+        cache.resetStatistics();
+        Map<String, byte[]> classes = compiler.compile(Arrays.asList(srcs));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+
+        CompiledClassLoader loader = new CompiledClassLoader();
+        try {
+            for(Map.Entry<String, byte[]> entry : classes.entrySet())
+                loader.addClass(entry.getKey(), entry.getValue());
+            Method method = loader.loadClass("A").getMethod("f", int.class);
+            Assert.assertEquals(44, method.invoke(null, 20));
+        } finally {
+            loader.close();
+        }
+    }
+
+    @Test
+    public void testParallelAssemblyDeterministic() throws Exception {
+        Compiler compiler = new Compiler();
+        Program prog = compiler.parse(Arrays.asList(
+                "module A { import B; public type string = \"java.lang.String\"; public string s; public int f(int x) { int[] a; a = [x, g(x)]; return a[1] * 2; } }",
+                "module B { public int g(int x) { while(x < 10) { x = x + 3; } return x; } }",
+                "module C { import A; public int h() { return f(4); } }"));
+        compiler.check(prog);
+        Iterable<SootClass> classes = compiler.generate(prog);
+        Map<String, byte[]> expected = compiler.assemble(classes, null);
+        for(int i=0;i<5;++i) {
+            Map<String, byte[]> actual = compiler.assemble(classes, ForkJoinPool.commonPool());
+            Assert.assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(actual.keySet()));
+            for(String name : expected.keySet())
+                Assert.assertArrayEquals(expected.get(name), actual.get(name));
+        }
+    }
 }
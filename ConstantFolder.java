@@ -0,0 +1,169 @@
+package backend;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import soot.Value;
+import soot.jimple.IntConstant;
+import ast.AddExpr;
+import ast.BinaryExpr;
+import ast.CompExpr;
+import ast.DivExpr;
+import ast.EqExpr;
+import ast.GeqExpr;
+import ast.GtExpr;
+import ast.LeqExpr;
+import ast.LtExpr;
+import ast.ModExpr;
+import ast.MulExpr;
+import ast.NeqExpr;
+import ast.SubExpr;
+import ast.Visitor;
+
+/**
+ * This class folds arithmetic and comparison expressions whose operands are constants, and
+ * simplifies algebraic identities such as <code>x*1</code>, <code>x+0</code> and <code>x*0</code>.
+ *
+ * It is used by {@link ExprCodeGenerator} on the already generated operands, so operands with
+ * side effects have been evaluated by the time an expression is folded away. Division and
+ * modulo by a constant zero are never folded, so that they still throw at runtime.
+ */
+public class ConstantFolder {
+	/** The number of expression nodes folded so far. */
+	private static final AtomicInteger numFolded = new AtomicInteger();
+
+	private ConstantFolder() {}
+
+	/** Returns the number of expression nodes folded since the last call to {@link #reset()}. */
+	public static int getNumFolded() {
+		return numFolded.get();
+	}
+
+	/** Resets the folding statistics. */
+	public static void reset() {
+		numFolded.set(0);
+	}
+
+	private static Value folded(Value v) {
+		numFolded.incrementAndGet();
+		return v;
+	}
+
+	private static boolean isConst(Value v, int value) {
+		return v instanceof IntConstant && ((IntConstant)v).value == value;
+	}
+
+	/**
+	 * Tries to fold a binary expression with the given operands; returns the folded value, or
+	 * <code>null</code> if the expression cannot be simplified.
+	 */
+	public static Value fold(BinaryExpr nd, final Value lhs, final Value rhs) {
+		if(lhs instanceof IntConstant && rhs instanceof IntConstant) {
+			final int l = ((IntConstant)lhs).value, r = ((IntConstant)rhs).value;
+			Value res = nd.accept(new Visitor<Value>() {
+				@Override
+				public Value visitAddExpr(AddExpr nd) {
+					return IntConstant.v(l + r);
+				}
+				@Override
+				public Value visitSubExpr(SubExpr nd) {
+					return IntConstant.v(l - r);
+				}
+				@Override
+				public Value visitMulExpr(MulExpr nd) {
+					return IntConstant.v(l * r);
+				}
+				@Override
+				public Value visitDivExpr(DivExpr nd) {
+					return r == 0 ? null : IntConstant.v(l / r);
+				}
+				@Override
+				public Value visitModExpr(ModExpr nd) {
+					return r == 0 ? null : IntConstant.v(l % r);
+				}
+			});
+			return res == null ? null : folded(res);
+		}
+
+		// algebraic identities with one constant operand
+		Value res = nd.accept(new Visitor<Value>() {
+			@Override
+			public Value visitAddExpr(AddExpr nd) {
+				if(isConst(rhs, 0))
+					return lhs;
+				if(isConst(lhs, 0))
+					return rhs;
+				return null;
+			}
+			@Override
+			public Value visitSubExpr(SubExpr nd) {
+				return isConst(rhs, 0) ? lhs : null;
+			}
+			@Override
+			public Value visitMulExpr(MulExpr nd) {
+				if(isConst(rhs, 1))
+					return lhs;
+				if(isConst(lhs, 1))
+					return rhs;
+				if(isConst(lhs, 0) || isConst(rhs, 0))
+					return IntConstant.v(0);
+				return null;
+			}
+			@Override
+			public Value visitDivExpr(DivExpr nd) {
+				return isConst(rhs, 1) ? lhs : null;
+			}
+			@Override
+			public Value visitModExpr(ModExpr nd) {
+				return null;
+			}
+		});
+		return res == null ? null : folded(res);
+	}
+
+	/**
+	 * Tries to fold a comparison expression with the given operands; returns the constant
+	 * 0 or 1, or <code>null</code> if the operands are not both constants.
+	 */
+	public static Value fold(CompExpr nd, Value lhs, Value rhs) {
+		if(!(lhs instanceof IntConstant && rhs instanceof IntConstant))
+			return null;
+		final int l = ((IntConstant)lhs).value, r = ((IntConstant)rhs).value;
+		Boolean res = nd.accept(new Visitor<Boolean>() {
+			@Override
+			public Boolean visitEqExpr(EqExpr nd) {
+				return l == r;
+			}
+			@Override
+			public Boolean visitNeqExpr(NeqExpr nd) {
+				return l != r;
+			}
+			@Override
+			public Boolean visitLtExpr(LtExpr nd) {
+				return l < r;
+			}
+			@Override
+			public Boolean visitGtExpr(GtExpr nd) {
+				return l > r;
+			}
+			@Override
+			public Boolean visitLeqExpr(LeqExpr nd) {
+				return l <= r;
+			}
+			@Override
+			public Boolean visitGeqExpr(GeqExpr nd) {
+				return l >= r;
+			}
+		});
+		return folded(IntConstant.v(res ? 1 : 0));
+	}
+
+	/**
+	 * Tries to fold the negation of the given operand; returns the folded value, or
+	 * <code>null</code> if the operand is not a constant.
+	 */
+	public static Value foldNeg(Value operand) {
+		if(!(operand instanceof IntConstant))
+			return null;
+		return folded(IntConstant.v(-((IntConstant)operand).value));
+	}
+}
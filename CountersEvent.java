@@ -0,0 +1,31 @@
+package driver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event recording a snapshot of the compiler's counters.
+ */
+@Name("compiler.Counters")
+@Label("Compiler Counters")
+@Category("Compiler")
+@Description("Snapshot of the compiler's counters")
+class CountersEvent extends Event {
+	@Label("Tokens")
+	long tokens;
+
+	@Label("AST Nodes")
+	long astNodes;
+
+	@Label("Jimple Units")
+	long jimpleUnits;
+
+	@Label("Temporaries")
+	long temps;
+
+	@Label("Method References")
+	long methodRefs;
+}
@@ -1,14 +1,24 @@
 package backend;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
+import soot.ArrayType;
+import soot.Body;
 import soot.Local;
+import soot.Modifier;
+import soot.RefType;
 import soot.Scene;
 import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
 import soot.SootMethodRef;
 import soot.Type;
 import soot.Unit;
 import soot.Value;
+import soot.VoidType;
 import soot.jimple.Constant;
 import soot.jimple.IntConstant;
 import soot.jimple.Jimple;
@@ -16,6 +26,7 @@ import soot.jimple.NopStmt;
 import soot.jimple.StaticInvokeExpr;
 import soot.jimple.StringConstant;
 import soot.util.Chain;
+import ast.ASTNode;
 import ast.AddExpr;
 import ast.ArrayIndex;
 import ast.ArrayLiteral;
@@ -44,6 +55,8 @@ import ast.SubExpr;
 import ast.VarDecl;
 import ast.VarName;
 import ast.Visitor;
+import driver.CompilerMetrics;
+import driver.CompilerMetrics.Counter;
 
 /**
  * This class is in charge of creating Jimple code for a given expression (and its nested
@@ -56,9 +69,17 @@ public class ExprCodeGenerator extends Visitor<Value> {
 	/** We cache the statement list of the enclosing function for convenience. */
 	private final Chain<Unit> units;
 	
-	private ExprCodeGenerator(FunctionCodeGenerator fcg) {
+	/** Values of loop-invariant expressions that have been computed ahead of the enclosing loops. */
+	private final Map<Expr, Value> hoisted;
+	
+	/** The template fields created for constant array literals, so that each literal only gets one. */
+	private final Map<ArrayLiteral, SootField> templates;
+	
+	private ExprCodeGenerator(FunctionCodeGenerator fcg, Map<Expr, Value> hoisted, Map<ArrayLiteral, SootField> templates) {
 		this.fcg = fcg;
 		this.units = fcg.getBody().getUnits();
+		this.hoisted = hoisted;
+		this.templates = templates;
 	}
 	
 	/**
@@ -70,17 +91,32 @@ public class ExprCodeGenerator extends Visitor<Value> {
 		if(v == null || v instanceof Local || v instanceof Constant) {
 			return v;
 		} else {
-			Local temp = fcg.mkTemp(v.getType());
+			Local temp = mkTemp(v.getType());
 			units.add(Jimple.v().newAssignStmt(temp, v));
 			return temp;
 		}
 	}
 
+	/** Allocates a new temporary variable of the given type. */
+	private Local mkTemp(Type type) {
+		CompilerMetrics.v().count(Counter.TEMPS);
+		return fcg.mkTemp(type);
+	}
+
 	/** 
 	 * Convenience method to generate code for an expression and wrap it.
 	 */
 	public static Value generate(Expr expr, FunctionCodeGenerator fcg) {
-		ExprCodeGenerator gen = new ExprCodeGenerator(fcg);
+		return generate(expr, fcg, Collections.<Expr, Value>emptyMap(), new IdentityHashMap<ArrayLiteral, SootField>());
+	}
+	
+	/**
+	 * Convenience method to generate code for an expression and wrap it, reusing the
+	 * given values for hoisted loop-invariant subexpressions and the given template fields
+	 * of array literals that have been generated before.
+	 */
+	public static Value generate(Expr expr, FunctionCodeGenerator fcg, Map<Expr, Value> hoisted, Map<ArrayLiteral, SootField> templates) {
+		ExprCodeGenerator gen = new ExprCodeGenerator(fcg, hoisted, templates);
 		return gen.wrap(expr.accept(gen));
 	}
 	
@@ -117,10 +153,18 @@ public class ExprCodeGenerator extends Visitor<Value> {
 		return IntConstant.v(nd.getValue() ? 1 : 0);
 	}
 	
+	/** Array literals with at least this many constant elements are copied from a template. */
+	private static final int MIN_TEMPLATE_SIZE = 8;
+	
 	/** Generate code for an array literal. */
 	@Override
 	public Value visitArrayLiteral(ArrayLiteral nd) {
 		Type elttp = SootTypeUtil.getSootType(nd.getElement(0).type());
+		if(nd.getNumElement() >= MIN_TEMPLATE_SIZE) {
+			Value copy = copyTemplate(nd, elttp);
+			if(copy != null)
+				return copy;
+		}
 		// create a new array with the appropriate number of elements
 		Value array = wrap(Jimple.v().newNewArrayExpr(elttp, IntConstant.v(nd.getNumElement())));
 		for(int i=0;i<nd.getNumElement();++i) {
@@ -131,6 +175,88 @@ public class ExprCodeGenerator extends Visitor<Value> {
 		return array;
 	}
 	
+	/** Returns the constant value of the given array element, or <code>null</code> if it is not constant. */
+	private static Constant constantElement(Expr elt) {
+		if(elt instanceof IntLiteral)
+			return IntConstant.v(((IntLiteral)elt).getValue());
+		if(elt instanceof BooleanLiteral)
+			return IntConstant.v(((BooleanLiteral)elt).getValue() ? 1 : 0);
+		if(elt instanceof StringLiteral)
+			return StringConstant.v(((StringLiteral)elt).getValue());
+		if(elt instanceof NegExpr && ((NegExpr)elt).getOperand() instanceof IntLiteral)
+			return IntConstant.v(-((IntLiteral)((NegExpr)elt).getOperand()).getValue());
+		return null;
+	}
+	
+	/**
+	 * If all elements of the given array literal are constants, creates a static template array
+	 * that is initialised once in the static initialiser of the module class, and generates code
+	 * that clones the template. Returns the clone, or <code>null</code> if the literal is not constant.
+	 * A literal whose code is generated more than once reuses the template created the first time.
+	 */
+	private Value copyTemplate(ArrayLiteral nd, Type elttp) {
+		ArrayType arrtp = ArrayType.v(elttp, 1);
+		SootField field = templates.get(nd);
+		if(field == null) {
+			field = createTemplate(nd, elttp);
+			if(field == null)
+				return null;
+			templates.put(nd, field);
+		}
+		
+		// clone the template
+		RefType objtp = RefType.v("java.lang.Object");
+		SootMethodRef clone = Scene.v().makeMethodRef(objtp.getSootClass(), "clone", Collections.<Type>emptyList(), objtp, false);
+		Value template = wrap(Jimple.v().newStaticFieldRef(field.makeRef()));
+		Value copy = wrap(Jimple.v().newVirtualInvokeExpr((Local)template, clone, Collections.<Value>emptyList()));
+		return Jimple.v().newCastExpr(copy, arrtp);
+	}
+	
+	/**
+	 * Creates the static template field for the given array literal, initialised in the static
+	 * initialiser of the module class; returns <code>null</code> if the literal is not constant.
+	 */
+	private SootField createTemplate(ArrayLiteral nd, Type elttp) {
+		Constant[] elts = new Constant[nd.getNumElement()];
+		for(int i=0;i<elts.length;++i)
+			if((elts[i] = constantElement(nd.getElement(i))) == null)
+				return null;
+		
+		ASTNode<?> fn = nd;
+		while(!(fn instanceof FunctionDeclaration))
+			fn = fn.getParent();
+		SootClass klass = fcg.getModuleCodeGenerator().getProgramCodeGenerator().getSootClass(((FunctionDeclaration)fn).getModule());
+		ArrayType arrtp = ArrayType.v(elttp, 1);
+		
+		// create the template field, and initialise it in <clinit>
+		int n = 0;
+		while(klass.declaresFieldByName("$const" + n))
+			++n;
+		SootField field = new SootField("$const" + n, arrtp, Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+		klass.addField(field);
+		Body clinit = getStaticInitializer(klass);
+		Local tpl = Jimple.v().newLocal("$const" + n, arrtp);
+		clinit.getLocals().add(tpl);
+		Unit ret = clinit.getUnits().getLast();
+		clinit.getUnits().insertBefore(Jimple.v().newAssignStmt(tpl, Jimple.v().newNewArrayExpr(elttp, IntConstant.v(elts.length))), ret);
+		for(int i=0;i<elts.length;++i)
+			clinit.getUnits().insertBefore(Jimple.v().newAssignStmt(Jimple.v().newArrayRef(tpl, IntConstant.v(i)), elts[i]), ret);
+		clinit.getUnits().insertBefore(Jimple.v().newAssignStmt(Jimple.v().newStaticFieldRef(field.makeRef()), tpl), ret);
+		return field;
+	}
+	
+	/** Returns the body of the static initialiser of the given class, creating it if necessary. */
+	private static Body getStaticInitializer(SootClass klass) {
+		if(klass.declaresMethod(SootMethod.staticInitializerName, Collections.<Type>emptyList()))
+			return klass.getMethod(SootMethod.staticInitializerName, Collections.<Type>emptyList()).getActiveBody();
+		SootMethod clinit = new SootMethod(SootMethod.staticInitializerName, Collections.<Type>emptyList(), VoidType.v(), Modifier.STATIC);
+		klass.addMethod(clinit);
+		Body body = Jimple.v().newBody(clinit);
+		clinit.setActiveBody(body);
+		body.getUnits().add(Jimple.v().newReturnVoidStmt());
+		return body;
+	}
+	
 	/** Generate code for an array index expression. */
 	@Override
 	public Value visitArrayIndex(ArrayIndex nd) {
@@ -161,8 +287,13 @@ public class ExprCodeGenerator extends Visitor<Value> {
 		 *       generate code in the more specialised visitor methods visitAddExpr,
 		 *       visitSubExpr, etc., instead
 		 */
+		if(hoisted.containsKey(nd))
+			return hoisted.get(nd);
 		final Value lhs = wrap(nd.getLeft().accept(this));
 		final Value rhs = wrap(nd.getRight().accept(this));
+		Value folded = ConstantFolder.fold(nd, lhs, rhs);
+		if(folded != null)
+			return folded;
 		Value res = nd.accept(new Visitor<Value>() {
 			@Override
 			public Value visitAddExpr(AddExpr nd) {
@@ -198,47 +329,103 @@ public class ExprCodeGenerator extends Visitor<Value> {
 	public Value visitCompExpr(CompExpr nd) {
 		final Value left = wrap(nd.getLeft().accept(this)),
 					right = wrap(nd.getRight().accept(this));
-		Value res = nd.accept(new Visitor<Value>() {
+		Value folded = ConstantFolder.fold(nd, left, right);
+		if(folded != null)
+			return folded;
+		Value res = compare(nd, left, right, false);
+		// compute a result of 0 or 1 depending on the truth value of the expression
+		Local resvar = mkTemp(SootTypeUtil.getSootType(nd.type()));
+		units.add(Jimple.v().newAssignStmt(resvar, IntConstant.v(1)));
+		NopStmt join = Jimple.v().newNopStmt();
+		units.add(Jimple.v().newIfStmt(res, join));
+		units.add(Jimple.v().newAssignStmt(resvar, IntConstant.v(0)));
+		units.add(join);
+		return resvar;
+	}
+	
+	/**
+	 * Builds the Jimple condition for the given comparison expression applied to the
+	 * (already wrapped) operands; if <code>negate</code> is set, the inverse condition
+	 * is built instead.
+	 */
+	private Value compare(CompExpr nd, final Value left, final Value right, final boolean negate) {
+		return nd.accept(new Visitor<Value>() {
 			@Override
 			public Value visitEqExpr(EqExpr nd) {
-				return Jimple.v().newEqExpr(left, right);
+				return negate ? Jimple.v().newNeExpr(left, right) : Jimple.v().newEqExpr(left, right);
 			}
 			@Override
 			public Value visitNeqExpr(NeqExpr nd) {
-				return Jimple.v().newNeExpr(left, right);
+				return negate ? Jimple.v().newEqExpr(left, right) : Jimple.v().newNeExpr(left, right);
 			}
 			@Override
 			public Value visitLtExpr(LtExpr nd) {
-				return Jimple.v().newLtExpr(left, right);
+				return negate ? Jimple.v().newGeExpr(left, right) : Jimple.v().newLtExpr(left, right);
 			}
 			@Override
 			public Value visitGtExpr(GtExpr nd) {
-				return Jimple.v().newGtExpr(left, right);
+				return negate ? Jimple.v().newLeExpr(left, right) : Jimple.v().newGtExpr(left, right);
 			}
 			@Override
 			public Value visitLeqExpr(LeqExpr nd) {
-				return Jimple.v().newLeExpr(left, right);
+				return negate ? Jimple.v().newGtExpr(left, right) : Jimple.v().newLeExpr(left, right);
 			}
 			@Override
 			public Value visitGeqExpr(GeqExpr nd) {
-				return Jimple.v().newGeExpr(left, right);
+				return negate ? Jimple.v().newLtExpr(left, right) : Jimple.v().newGeExpr(left, right);
 			}
 		});
-		// compute a result of 0 or 1 depending on the truth value of the expression
-		Local resvar = fcg.mkTemp(SootTypeUtil.getSootType(nd.type()));
-		units.add(Jimple.v().newAssignStmt(resvar, IntConstant.v(1)));
-		NopStmt join = Jimple.v().newNopStmt();
-		units.add(Jimple.v().newIfStmt(res, join));
-		units.add(Jimple.v().newAssignStmt(resvar, IntConstant.v(0)));
-		units.add(join);
-		return resvar;
+	}
+	
+	/**
+	 * Generates code for a condition that directs control flow: the generated code jumps to
+	 * <code>target</code> if the condition evaluates to <code>jumpIf</code>, and falls through
+	 * otherwise. Comparisons become a single conditional branch, without a 0/1 temporary.
+	 */
+	public static void generateBranch(Expr cond, boolean jumpIf, Unit target, FunctionCodeGenerator fcg) {
+		generateBranch(cond, jumpIf, target, fcg, Collections.<Expr, Value>emptyMap(), new IdentityHashMap<ArrayLiteral, SootField>());
+	}
+	
+	/**
+	 * Like {@link #generateBranch(Expr, boolean, Unit, FunctionCodeGenerator)}, but reuses the
+	 * given values for hoisted loop-invariant subexpressions and the given template fields of
+	 * array literals; a condition may be generated more than once, such as in a rotated loop.
+	 */
+	public static void generateBranch(Expr cond, boolean jumpIf, Unit target, FunctionCodeGenerator fcg,
+									  Map<Expr, Value> hoisted, Map<ArrayLiteral, SootField> templates) {
+		ExprCodeGenerator gen = new ExprCodeGenerator(fcg, hoisted, templates);
+		if(cond instanceof CompExpr) {
+			CompExpr comp = (CompExpr)cond;
+			Value left = gen.wrap(comp.getLeft().accept(gen)),
+				  right = gen.wrap(comp.getRight().accept(gen));
+			Value folded = ConstantFolder.fold(comp, left, right);
+			if(folded != null) {
+				// the outcome is known statically
+				if(((IntConstant)folded).value == (jumpIf ? 1 : 0))
+					gen.units.add(Jimple.v().newGotoStmt(target));
+				return;
+			}
+			gen.units.add(Jimple.v().newIfStmt(gen.compare(comp, left, right, !jumpIf), target));
+		} else if(cond instanceof BooleanLiteral) {
+			// the outcome is known statically: either always jump, or never
+			if(((BooleanLiteral)cond).getValue() == jumpIf)
+				gen.units.add(Jimple.v().newGotoStmt(target));
+		} else {
+			Value v = gen.wrap(cond.accept(gen));
+			gen.units.add(Jimple.v().newIfStmt(jumpIf ? Jimple.v().newNeExpr(v, IntConstant.v(0))
+													  : Jimple.v().newEqExpr(v, IntConstant.v(0)), target));
+		}
 	}
 	
 	/** Generate code for a negation expression. */
 	@Override
 	public Value visitNegExpr(NegExpr nd) {
 		/* TODO: generate code for negation expression */
-		return Jimple.v().newNegExpr(wrap(nd.getOperand().accept(this)));
+		Value operand = wrap(nd.getOperand().accept(this));
+		Value folded = ConstantFolder.foldNeg(operand);
+		if(folded != null)
+			return folded;
+		return Jimple.v().newNegExpr(operand);
 	}
 	
 	/** Generate code for a function call. */
@@ -255,6 +442,7 @@ public class ExprCodeGenerator extends Visitor<Value> {
 		// compute reference to callee
 		SootClass calleeSootClass = fcg.getModuleCodeGenerator().getProgramCodeGenerator().getSootClass(calleeModule);
 		SootMethodRef callee = Scene.v().makeMethodRef(calleeSootClass, calleeName, parmTypes, rettp, true);
+		CompilerMetrics.v().count(Counter.METHOD_REFS);
 		
 		// prepare arguments
 		Value[] args = new Value[nd.getNumArgument()];
@@ -269,7 +457,7 @@ public class ExprCodeGenerator extends Visitor<Value> {
 			units.add(Jimple.v().newInvokeStmt(invk));
 			return null;
 		} else {
-			Local res = fcg.mkTemp(rettp);
+			Local res = mkTemp(rettp);
 			units.add(Jimple.v().newAssignStmt(res, invk));
 			return res;
 		}		
@@ -0,0 +1,103 @@
+package driver;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import soot.SootClass;
+import ast.Program;
+import backend.PassManager;
+import frontend.ModuleInterface;
+
+/**
+ * A compiler driver that reuses the class files of unchanged modules from a {@link BuildCache}.
+ *
+ * Only modules whose cache key has changed are compiled; these are lexed, parsed and checked together
+ * with the modules they (transitively) import, which are needed for name and type resolution. All
+ * other modules are not even parsed.
+ */
+public class IncrementalCompiler {
+	private final BuildCache cache;
+	private final Compiler compiler;
+
+	public IncrementalCompiler(BuildCache cache) {
+		this(cache, new Compiler());
+	}
+
+	public IncrementalCompiler(BuildCache cache, Compiler compiler) {
+		this.cache = cache;
+		this.compiler = compiler;
+	}
+
+	/**
+	 * Compiles the program consisting of modules with the given sources; returns a map from class
+	 * names to class file bytes, in the order of the sources.
+	 */
+	public Map<String, byte[]> compile(Iterable<String> sources) throws IOException, CompilationException {
+		// determine module interfaces and cache keys
+		Map<String, String> sourceOf = new LinkedHashMap<String, String>();
+		Map<String, ModuleInterface> interfaces = new HashMap<String, ModuleInterface>();
+		for(String source : sources) {
+			ModuleInterface iface = ModuleInterface.scan(source);
+			if(sourceOf.containsKey(iface.getName()))
+				throw new CompilationException(Collections.singletonList("duplicate module " + iface.getName()));
+			sourceOf.put(iface.getName(), source);
+			interfaces.put(iface.getName(), iface);
+		}
+
+		// inlining copies code of imported modules, so then their implementation matters as well
+		PassManager passes = compiler.getPassManager();
+		Map<String, String> implementations = passes.getPass("inlining").isEnabled() ? sourceOf : null;
+
+		Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+		Map<String, String> stale = new HashMap<String, String>();
+		for(Map.Entry<String, String> entry : sourceOf.entrySet()) {
+			String name = entry.getKey();
+			String key = BuildCache.key(entry.getValue(), interfaces.get(name), interfaces, implementations, passes.getConfiguration());
+			byte[] code = cache.lookup(name, key);
+			classes.put(name, code);
+			if(code == null)
+				stale.put(name, key);
+		}
+		if(stale.isEmpty())
+			return classes;
+
+		// the stale modules need to be compiled together with everything they import
+		Set<String> needed = new HashSet<String>();
+		Deque<String> worklist = new ArrayDeque<String>(stale.keySet());
+		while(!worklist.isEmpty()) {
+			String name = worklist.pop();
+			if(needed.add(name) && interfaces.containsKey(name))
+				worklist.addAll(interfaces.get(name).getImports());
+		}
+
+		ArrayList<String> neededSources = new ArrayList<String>();
+		for(Map.Entry<String, String> entry : sourceOf.entrySet())
+			if(needed.contains(entry.getKey()))
+				neededSources.add(entry.getValue());
+		Program prog = compiler.parse(neededSources);
+		compiler.check(prog);
+
+		ArrayList<SootClass> staleClasses = new ArrayList<SootClass>();
+		for(SootClass klass : compiler.generate(prog))
+			if(stale.containsKey(klass.getName()))
+				staleClasses.add(klass);
+		for(Map.Entry<String, byte[]> entry : compiler.assemble(staleClasses, null).entrySet()) {
+			cache.store(entry.getKey(), stale.get(entry.getKey()), entry.getValue());
+			classes.put(entry.getKey(), entry.getValue());
+		}
+		return classes;
+	}
+
+	/** The cache used by this compiler. */
+	public BuildCache getCache() {
+		return cache;
+	}
+}
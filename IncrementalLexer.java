@@ -0,0 +1,132 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+
+import frontend.Token;
+
+/**
+ * A lexer for source text that is edited repeatedly, such as in an editor. It keeps the text together
+ * with its tokens in compact form, and after an edit re-lexes only the window of tokens affected by it.
+ *
+ * Re-lexing starts at the boundary of the last token before the edit, and stops as soon as it produces
+ * a token after the edit that coincides with an old token in type, length and (shifted) position:
+ * since the lexer has no states of its own, all following tokens must be the same as before, and are
+ * only shifted.
+ */
+public class IncrementalLexer {
+	private String text;
+	private TokenBuffer tokens;
+	/** The window of tokens re-lexed by the last edit. */
+	private int windowStart, windowEnd;
+
+	public IncrementalLexer(String text) throws IOException {
+		this.text = text;
+		this.tokens = new TokenBuffer();
+		new Lexer(new StringReader(text)).tokenize(tokens);
+		this.windowStart = 0;
+		this.windowEnd = tokens.size();
+	}
+
+	/** The current source text. */
+	public String getText() {
+		return text;
+	}
+
+	/** The tokens of the current source text, including the final EOF token. */
+	public TokenBuffer getTokens() {
+		return tokens;
+	}
+
+	/** The index of the first token re-lexed by the last edit. */
+	public int getWindowStart() {
+		return windowStart;
+	}
+
+	/** The index after the last token re-lexed by the last edit; all later tokens were kept. */
+	public int getWindowEnd() {
+		return windowEnd;
+	}
+
+	/** The offset of the first character of the i-th token, including the opening quote of a string literal. */
+	public static int tokenStart(TokenBuffer tokens, int i) {
+		return tokens.getStart(i) - (tokens.getType(i) == Token.Type.STRING_LITERAL ? 1 : 0);
+	}
+
+	/** The offset after the last character of the i-th token, including the closing quote of a string literal. */
+	public static int tokenEnd(TokenBuffer tokens, int i) {
+		return tokens.getStart(i) + tokens.getLength(i) + (tokens.getType(i) == Token.Type.STRING_LITERAL ? 1 : 0);
+	}
+
+	/**
+	 * Replaces <code>length</code> characters at <code>offset</code> by <code>replacement</code>, and
+	 * re-lexes the affected tokens; returns the number of tokens re-lexed. If the new text cannot be
+	 * lexed, the {@link LexicalException} is passed on and the edit is not applied.
+	 */
+	public int edit(int offset, int length, String replacement) throws IOException {
+		if(offset < 0 || length < 0 || offset + length > text.length())
+			throw new IndexOutOfBoundsException("edit [" + offset + ", " + (offset + length) + ") outside of text");
+		String newText = text.substring(0, offset) + replacement + text.substring(offset + length);
+		int delta = replacement.length() - length, editEnd = offset + replacement.length();
+
+		// restart at the token before the first one touched by the edit, since the two may merge
+		int lo = 0;
+		while(lo < tokens.size() - 1 && tokenEnd(tokens, lo) < offset)
+			++lo;
+		int restart = 0, restartLine = 0, restartColumn = 0;
+		if(lo > 0) {
+			--lo;
+			restart = tokenStart(tokens, lo);
+			restartLine = tokens.getLine(lo);
+			restartColumn = tokens.getColumn(lo);
+		}
+
+		TokenBuffer window = new TokenBuffer(16, tokens.getSymbols());
+		Lexer lexer = Lexer.fromBuffer(CharBuffer.wrap(newText, restart, newText.length()));
+		int resync = tokens.size(), j = lo;
+		for(;;) {
+			Token.Type type = lexer.nextToken(window);
+			int k = window.size() - 1, start = window.getStart(k) + restart;
+			if(type == Token.Type.EOF)
+				break;
+			if(start >= editEnd) {
+				while(j < tokens.size() && tokens.getStart(j) + delta < start)
+					++j;
+				if(j < tokens.size() && tokens.getStart(j) + delta == start
+						&& tokens.getType(j) == type && tokens.getLength(j) == window.getLength(k)) {
+					resync = j;
+					break;
+				}
+			}
+		}
+
+		// splice the window in, shifting the line and column numbers of both the window and the old tokens
+		TokenBuffer res = new TokenBuffer(tokens.size() + window.size(), tokens.getSymbols());
+		for(int i=0;i<lo;++i)
+			copy(tokens, i, res, 0, 0, 0);
+		int n = resync < tokens.size() ? window.size() - 1 : window.size();
+		for(int i=0;i<n;++i)
+			copy(window, i, res, restart, restartLine, window.getLine(i) == 0 ? restartColumn : 0);
+		if(resync < tokens.size()) {
+			// the last window token is the first old token that was kept
+			int k = window.size() - 1;
+			int lineDelta = window.getLine(k) + restartLine - tokens.getLine(resync);
+			int columnDelta = window.getColumn(k) + (window.getLine(k) == 0 ? restartColumn : 0) - tokens.getColumn(resync);
+			for(int i=resync;i<tokens.size();++i)
+				copy(tokens, i, res, delta, lineDelta, tokens.getLine(i) == tokens.getLine(resync) ? columnDelta : 0);
+		}
+
+		// only now that the window has been lexed successfully, the edit takes effect
+		text = newText;
+		tokens = res;
+		windowStart = lo;
+		windowEnd = lo + n;
+		return n;
+	}
+
+	private static void copy(TokenBuffer from, int i, TokenBuffer to, int startDelta, int lineDelta, int columnDelta) {
+		to.add(from.getType(i), from.getStart(i) + startDelta, from.getLength(i),
+				from.getLine(i) + lineDelta, from.getColumn(i) + columnDelta, from.getSymbol(i));
+	}
+}
@@ -0,0 +1,196 @@
+package frontend;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lexer.IncrementalLexer;
+import lexer.Lexer;
+import lexer.LexicalException;
+import lexer.TokenBuffer;
+import parser.Parser;
+import ast.Declaration;
+import ast.Module;
+import frontend.Token.Type;
+
+/**
+ * An incremental front end for a single module whose source is edited repeatedly, such as in an editor.
+ *
+ * After an edit, only the affected tokens are re-lexed (see {@link IncrementalLexer}), and if all of
+ * them lie within top-level declarations, only those declarations are re-parsed and spliced into the
+ * existing module AST in place of the old ones. All other declarations keep their identity. Edits that
+ * touch the module header or the imports, or that change how the tokens are grouped into declarations,
+ * fall back to re-parsing the whole module.
+ *
+ * The AST's cached attributes are not flushed here; after an edit, attributes of unchanged declarations
+ * that may depend on the replaced ones have to be flushed before checking the module again.
+ */
+public class IncrementalParser {
+	private final IncrementalLexer lexer;
+	private Module module;
+	/** The token spans of the top-level declarations: declaration i covers tokens [start[i], end[i]). */
+	private int[] declStart, declEnd;
+	/** The declarations re-parsed by the last edit; <code>null</code> if the whole module was re-parsed. */
+	private List<Declaration> changed;
+
+	public IncrementalParser(String text) throws IOException, beaver.Parser.Exception {
+		lexer = new IncrementalLexer(text);
+		reparse();
+	}
+
+	/** The AST of the module; replaced by a new one whenever the whole module is re-parsed. */
+	public Module getModule() {
+		return module;
+	}
+
+	/** The current source text. */
+	public String getText() {
+		return lexer.getText();
+	}
+
+	/**
+	 * The declarations re-parsed by the last edit, or <code>null</code> if it re-parsed the whole
+	 * module.
+	 */
+	public List<Declaration> getChangedDeclarations() {
+		return changed;
+	}
+
+	/**
+	 * Replaces <code>length</code> characters at <code>offset</code> by <code>replacement</code> and
+	 * updates the AST. If the new text does not parse, the exception is passed on, and the next edit
+	 * re-parses the whole module; if it does not even lex, the edit is not applied to the text either.
+	 */
+	public void edit(int offset, int length, String replacement) throws IOException, beaver.Parser.Exception {
+		int oldSize = lexer.getTokens().size();
+		int[] oldStart = declStart, oldEnd = declEnd;
+		try {
+			lexer.edit(offset, length, replacement);
+		} catch(LexicalException e) {
+			module = null;
+			changed = null;
+			throw e;
+		}
+		TokenBuffer tokens = lexer.getTokens();
+		computeSpans(tokens);
+		if(module == null || oldStart == null || declStart == null) {
+			reparse();
+			return;
+		}
+
+		// the window of re-lexed tokens, in new and in old token indices
+		int lo = lexer.getWindowStart(), hi = lexer.getWindowEnd(), shift = tokens.size() - oldSize;
+		int before = 0;
+		while(before < declStart.length && before < oldStart.length && declEnd[before] <= lo && oldEnd[before] <= lo)
+			++before;
+		int after = 0;
+		while(after < declStart.length - before && after < oldStart.length - before
+				&& declStart[declStart.length-1-after] >= hi
+				&& declStart[declStart.length-1-after] == oldStart[oldStart.length-1-after] + shift
+				&& declEnd[declEnd.length-1-after] == oldEnd[oldEnd.length-1-after] + shift)
+			++after;
+		int n = declStart.length - before - after;
+		if(n == 0 || n != oldStart.length - before - after || lo < declStart[before] || hi > declEnd[before+n-1]) {
+			reparse();
+			return;
+		}
+
+		List<Declaration> decls = new ArrayList<Declaration>();
+		try {
+			for(int i=before;i<before+n;++i)
+				decls.add(parseDeclaration(tokens, i));
+		} catch(beaver.Parser.Exception e) {
+			// the AST no longer matches the text, so the next edit has to start over
+			module = null;
+			changed = null;
+			throw e;
+		}
+		for(int i=0;i<n;++i)
+			module.setDeclaration(decls.get(i), before + i);
+		changed = Collections.unmodifiableList(decls);
+	}
+
+	private void reparse() throws IOException, beaver.Parser.Exception {
+		module = null;
+		changed = null;
+		computeSpans(lexer.getTokens());
+		module = (Module)new Parser().parse(new Lexer(new StringReader(lexer.getText())));
+		if(declStart == null || module.getNumDeclaration() != declStart.length)
+			throw new IllegalStateException("declaration spans do not match the AST");
+	}
+
+	/**
+	 * Parses the i-th declaration on its own. The parser sees the module header and imports, followed by
+	 * whitespace that puts the declaration at its original line and column, so the positions in the new
+	 * subtree are the same as in a parse of the whole module.
+	 */
+	private Declaration parseDeclaration(TokenBuffer tokens, int i) throws IOException, beaver.Parser.Exception {
+		String text = lexer.getText();
+		int header = declStart[0] - 1, first = declStart[i], last = declEnd[i] - 1;
+		StringBuilder src = new StringBuilder(text.substring(0, IncrementalLexer.tokenEnd(tokens, header)));
+		int lines = tokens.getLine(first) - tokens.getLine(header);
+		int columns = lines == 0 ? tokens.getColumn(first) - tokens.getColumn(header) - tokens.getLength(header) : tokens.getColumn(first);
+		for(int k=0;k<lines;++k)
+			src.append('\n');
+		for(int k=0;k<columns;++k)
+			src.append(' ');
+		src.append(text, IncrementalLexer.tokenStart(tokens, first), IncrementalLexer.tokenEnd(tokens, last));
+		src.append(" }");
+
+		Module wrapper = (Module)new Parser().parse(new Lexer(new StringReader(src.toString())));
+		if(wrapper.getNumDeclaration() != 1)
+			throw new IllegalStateException("expected a single declaration");
+		return wrapper.getDeclaration(0);
+	}
+
+	/**
+	 * Determines the token spans of the top-level declarations: a declaration starts at depth one,
+	 * outside of an import, and ends with a semicolon at depth one or with the brace closing its body.
+	 * Sets the spans to <code>null</code> if the tokens are not a well-formed module.
+	 */
+	private void computeSpans(TokenBuffer tokens) {
+		List<Integer> starts = new ArrayList<Integer>(), ends = new ArrayList<Integer>();
+		int depth = 0, start = -1;
+		boolean inImport = false, closed = false;
+		for(int i=0;i<tokens.size();++i) {
+			Type type = tokens.getType(i);
+			if(depth == 1 && start < 0 && !inImport) {
+				if(type == Type.IMPORT)
+					inImport = true;
+				else if(type != Type.RCURLY)
+					start = i;
+			}
+			if(type == Type.LCURLY) {
+				++depth;
+			} else if(type == Type.RCURLY) {
+				if(--depth == 0)
+					closed = true;
+				else if(depth == 1 && start >= 0) {
+					starts.add(start);
+					ends.add(i + 1);
+					start = -1;
+				}
+			} else if(type == Type.SEMICOLON && depth == 1) {
+				if(inImport) {
+					inImport = false;
+				} else if(start >= 0) {
+					starts.add(start);
+					ends.add(i + 1);
+					start = -1;
+				}
+			}
+		}
+		if(!closed || depth != 0 || start >= 0) {
+			declStart = declEnd = null;
+			return;
+		}
+		declStart = new int[starts.size()];
+		declEnd = new int[ends.size()];
+		for(int i=0;i<declStart.length;++i) {
+			declStart[i] = starts.get(i);
+			declEnd[i] = ends.get(i);
+		}
+	}
+}
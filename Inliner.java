@@ -0,0 +1,84 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import soot.Body;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.ValueBox;
+import soot.jimple.FieldRef;
+import soot.jimple.InvokeExpr;
+import soot.jimple.StaticInvokeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.invoke.SiteInliner;
+
+/**
+ * This class inlines calls to small functions across the whole program, including calls to functions
+ * in other modules.
+ *
+ * A call is inlined if the callee is a function of the program whose body does not exceed the size
+ * budget, does not call itself, and, if it lives in a different module than the caller, only refers to
+ * public fields and functions. Inlining renames the callee's locals, turns its parameters into
+ * assignments from the arguments, and rewrites each <code>return</code> into an assignment to the
+ * result followed by a jump to the statement after the call.
+ */
+public class Inliner {
+	/** The default maximum number of units in the body of an inlined function. */
+	public static final int DEFAULT_BUDGET = 20;
+
+	private final int budget;
+
+	public Inliner() {
+		this(DEFAULT_BUDGET);
+	}
+
+	public Inliner(int budget) {
+		this.budget = budget;
+	}
+
+	/** Inlines calls in all methods of the given classes; returns the number of inlined call sites. */
+	public int inline(Iterable<SootClass> classes) {
+		Set<SootMethod> functions = new LinkedHashSet<SootMethod>();
+		for(SootClass klass : classes)
+			for(SootMethod method : klass.getMethods())
+				if(method.hasActiveBody())
+					functions.add(method);
+
+		int n = 0;
+		for(SootMethod caller : functions) {
+			// only consider the original call sites, not the ones copied in by inlining
+			for(Unit u : new ArrayList<Unit>(caller.getActiveBody().getUnits())) {
+				Stmt stmt = (Stmt)u;
+				if(!stmt.containsInvokeExpr() || !(stmt.getInvokeExpr() instanceof StaticInvokeExpr))
+					continue;
+				SootMethod callee = stmt.getInvokeExpr().getMethod();
+				if(callee != caller && functions.contains(callee) && isInlinable(callee, caller)) {
+					SiteInliner.inlineSite(callee, stmt, caller);
+					++n;
+				}
+			}
+		}
+		return n;
+	}
+
+	private boolean isInlinable(SootMethod callee, SootMethod caller) {
+		Body body = callee.getActiveBody();
+		if(body.getUnits().size() > budget)
+			return false;
+		boolean sameClass = callee.getDeclaringClass() == caller.getDeclaringClass();
+		for(ValueBox box : body.getUseAndDefBoxes()) {
+			if(box.getValue() instanceof InvokeExpr) {
+				SootMethod target = ((InvokeExpr)box.getValue()).getMethod();
+				if(target == callee || !sameClass && !target.isPublic())
+					return false;
+			} else if(box.getValue() instanceof FieldRef) {
+				if(!sameClass && !((FieldRef)box.getValue()).getField().isPublic())
+					return false;
+			}
+		}
+		return true;
+	}
+}
@@ -4,8 +4,15 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 
+import lexer.ByteBufferReader;
+import lexer.IncrementalLexer;
 import lexer.Lexer;
+import lexer.LexicalException;
+import lexer.TokenBuffer;
 
 import org.junit.Test;
 
@@ -30,7 +37,7 @@ public class LexerTests {
 				try {
 					actual = lexer.nextToken();
 					assertEquals(expected, actual);
-				} catch(Error e) {
+				} catch(LexicalException e) {
 					if(expected != null)
 						fail(e.getMessage());
 					/* return; */
@@ -350,4 +357,138 @@ public class LexerTests {
            new Token(EOF, 0, 12, "")
        );
    }
+   
+   // checks that lexing in compact mode yields the same tokens as lexing with nextToken()
+   private final void runCompactTest(String input) {
+	   try {
+		   Lexer lexer = new Lexer(new StringReader(input));
+		   TokenBuffer buffer = new TokenBuffer();
+		   new Lexer(new StringReader(input)).tokenize(buffer);
+		   for(int i=0;i<buffer.size();++i) {
+			   String text = buffer.getSymbol(i) >= 0 ? buffer.getSymbols().get(buffer.getSymbol(i))
+					   : input.substring(buffer.getStart(i), buffer.getStart(i) + buffer.getLength(i));
+			   assertEquals(lexer.nextToken(), new Token(buffer.getType(i), buffer.getLine(i), buffer.getColumn(i), text));
+		   }
+		   assertEquals(EOF, buffer.getType(buffer.size()-1));
+	   } catch (IOException e) {
+		   e.printStackTrace();
+		   fail(e.getMessage());
+	   }
+   }
+   
+   @Test
+   public void testCompactMode() {
+	   runCompactTest("module Test {\n  public int f(int x) {\n    return x + x * 2;\n  }\n}");
+	   runCompactTest("if(x >= 10) s = \"a string\"; else s = \"\";");
+	   runCompactTest("");
+   }
+   
+   @Test
+   public void testCompactModeInternsIdentifiers() {
+	   try {
+		   TokenBuffer buffer = new TokenBuffer();
+		   new Lexer(new StringReader("x y x while y")).tokenize(buffer);
+		   assertEquals(buffer.getSymbol(0), buffer.getSymbol(2));
+		   assertEquals(buffer.getSymbol(1), buffer.getSymbol(4));
+		   assertEquals(-1, buffer.getSymbol(3));
+		   assertEquals(2, buffer.getSymbols().size());
+	   } catch (IOException e) {
+		   e.printStackTrace();
+		   fail(e.getMessage());
+	   }
+   }
+   
+   // checks that lexing from a buffer yields the same tokens as lexing from a reader
+   private final void runBufferTest(String input) {
+	   try {
+		   Lexer expected = new Lexer(new StringReader(input));
+		   Lexer fromBytes = Lexer.fromBuffer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+		   Lexer fromChars = Lexer.fromBuffer(CharBuffer.wrap(input));
+		   Token tk;
+		   do {
+			   tk = expected.nextToken();
+			   assertEquals(tk, fromBytes.nextToken());
+			   assertEquals(tk, fromChars.nextToken());
+		   } while(!tk.isEOF());
+	   } catch (IOException e) {
+		   e.printStackTrace();
+		   fail(e.getMessage());
+	   }
+   }
+   
+   @Test
+   public void testBufferInput() {
+	   runBufferTest("module Test {\n  public int f(int x) {\n    return x + x * 2;\n  }\n}");
+	   runBufferTest("s = \"gr\u00fc\u00dfe \u2603\"; t = \"ascii\";");
+	   runBufferTest("");
+   }
+   
+   // applies an edit incrementally and checks that the tokens are the same as when lexing the new text from scratch
+   private final void runIncrementalTest(IncrementalLexer lexer, int offset, int length, String replacement) {
+	   try {
+		   lexer.edit(offset, length, replacement);
+		   TokenBuffer expected = new TokenBuffer();
+		   new Lexer(new StringReader(lexer.getText())).tokenize(expected);
+		   TokenBuffer actual = lexer.getTokens();
+		   assertEquals(expected.size(), actual.size());
+		   for(int i=0;i<expected.size();++i) {
+			   assertEquals(expected.getType(i), actual.getType(i));
+			   assertEquals(expected.getStart(i), actual.getStart(i));
+			   assertEquals(expected.getLength(i), actual.getLength(i));
+			   assertEquals(expected.getLine(i), actual.getLine(i));
+			   assertEquals(expected.getColumn(i), actual.getColumn(i));
+		   }
+	   } catch (IOException e) {
+		   e.printStackTrace();
+		   fail(e.getMessage());
+	   }
+   }
+   
+   @Test
+   public void testIncrementalLexing() throws IOException {
+	   String src = "module Test {\n  public int f(int x) {\n    return x + 1;\n  }\n  public type s = \"str\";\n}";
+	   IncrementalLexer lexer = new IncrementalLexer(src);
+	   // change a literal in the middle; only the tokens around it are re-lexed
+	   runIncrementalTest(lexer, src.indexOf('1'), 1, "23");
+	   assertTrue(lexer.getWindowEnd() - lexer.getWindowStart() < 4);
+	   // merge two identifiers, and split them again
+	   runIncrementalTest(lexer, lexer.getText().indexOf("x +"), 3, "xy");
+	   runIncrementalTest(lexer, lexer.getText().indexOf("xy") + 1, 0, " + ");
+	   // insert lines, at the start and inside a string literal
+	   runIncrementalTest(lexer, 0, 0, "\n\n");
+	   runIncrementalTest(lexer, lexer.getText().indexOf("str"), 0, "a b");
+	   // delete up to the end
+	   runIncrementalTest(lexer, lexer.getText().indexOf("public type"), lexer.getText().length() - lexer.getText().indexOf("public type"), "}");
+   }
+   
+   @Test
+   public void testBufferReaderAtEnd() throws IOException {
+	   String input = "s = \"gr\u00fc\u00dfe \u2603\";";
+	   ByteBufferReader reader = new ByteBufferReader(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+	   // read in small chunks, so the reader is called again after switching to the decoder
+	   StringBuilder sb = new StringBuilder();
+	   char[] buf = new char[3];
+	   for(int n = reader.read(buf, 0, buf.length); n != -1; n = reader.read(buf, 0, buf.length))
+		   sb.append(buf, 0, n);
+	   assertEquals(input, sb.toString());
+	   // further reads after the end keep reporting the end
+	   assertEquals(-1, reader.read(buf, 0, buf.length));
+	   assertEquals(-1, reader.read(buf, 0, buf.length));
+	   reader.close();
+   }
+   
+   @Test
+   public void testIncrementalLexingError() throws IOException {
+	   String src = "module Test {\n  public int f(int x) {\n    return x + 1;\n  }\n}";
+	   IncrementalLexer lexer = new IncrementalLexer(src);
+	   // a character without a lexer rule leaves both the text and the tokens as they were
+	   try {
+		   lexer.edit(src.indexOf('+'), 1, "%");
+		   fail("Edit was supposed to fail, but succeeded");
+	   } catch(LexicalException e) {
+	   }
+	   assertEquals(src, lexer.getText());
+	   runIncrementalTest(lexer, src.indexOf('+'), 1, "-");
+	   assertEquals(src.replace('+', '-'), lexer.getText());
+   }
 }
@@ -0,0 +1,78 @@
+package test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import lexer.Lexer;
+import frontend.Token;
+
+/**
+ * Compares the throughput of lexing a large source file through a {@link java.io.Reader} with lexing
+ * it through a memory-mapped buffer. Takes the sizes of the generated inputs in megabytes as arguments
+ * (10, 50 and 100 by default).
+ */
+public class LexerThroughput {
+	private static final int RUNS = 5;
+
+	/** Writes a synthetic source file of at least the given size. */
+	private static File generate(long bytes) throws IOException {
+		File file = File.createTempFile("lexer-throughput", ".src");
+		file.deleteOnExit();
+		Writer w = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8));
+		try {
+			w.write("module Big {\n");
+			long written = 0;
+			for(int i=0; written < bytes; ++i) {
+				String decl = "  public int f" + i + "(int x, int[] a) {\n    while(x < 100) { a[x] = x * 2 + " + i
+						+ "; x = x + 1; }\n    return a[0];\n  }\n  string s" + i + ";\n";
+				w.write(decl);
+				written += decl.length();
+			}
+			w.write("}\n");
+		} finally {
+			w.close();
+		}
+		return file;
+	}
+
+	private static int lex(Lexer lexer) throws IOException {
+		int n = 0;
+		for(Token tk = lexer.nextToken(); !tk.isEOF(); tk = lexer.nextToken())
+			++n;
+		return n;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0)
+			args = new String[] { "10", "50", "100" };
+		for(String arg : args) {
+			File file = generate(Long.parseLong(arg) << 20);
+			double mb = file.length() / (double)(1 << 20);
+			long bestReader = Long.MAX_VALUE, bestMapped = Long.MAX_VALUE;
+			for(int run=0;run<RUNS;++run) {
+				long start = System.nanoTime();
+				BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+				try {
+					lex(new Lexer(reader));
+				} finally {
+					reader.close();
+				}
+				bestReader = Math.min(bestReader, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				lex(Lexer.fromFile(file.toPath()));
+				bestMapped = Math.min(bestMapped, System.nanoTime() - start);
+			}
+			System.out.printf("%6.1f MB: reader %7.1f MB/s, mapped %7.1f MB/s%n", mb,
+					mb / (bestReader / 1e9), mb / (bestMapped / 1e9));
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package lexer;
+
+/**
+ * Signals that the lexer encountered a character that does not start any token.
+ */
+public class LexicalException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private final int line, column;
+
+	public LexicalException(String message, int line, int column) {
+		super(message);
+		this.line = line;
+		this.column = column;
+	}
+
+	/** The (zero-based) line of the offending character. */
+	public int getLine() {
+		return line;
+	}
+
+	/** The (zero-based) column of the offending character. */
+	public int getColumn() {
+		return column;
+	}
+}
@@ -0,0 +1,227 @@
+package backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import soot.ArrayType;
+import soot.BooleanType;
+import soot.ByteType;
+import soot.CharType;
+import soot.DoubleType;
+import soot.FloatType;
+import soot.G;
+import soot.IntType;
+import soot.LongType;
+import soot.RefType;
+import soot.Scene;
+import soot.ShortType;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Type;
+import soot.VoidType;
+import soot.options.Options;
+
+/**
+ * A prebuilt snapshot of the signatures of the library classes a program can refer to, used to set
+ * up Soot without scanning the JDK.
+ *
+ * A snapshot records, for every class, its modifiers, superclass and interfaces, and its public and
+ * protected fields, methods and constructors; it is closed under supertypes. Installing a snapshot
+ * resets Soot, turns off the Soot class path, and adds the recorded classes to the scene as library
+ * classes resolved to the signatures level. Classes not in the snapshot, such as the targets of
+ * <code>type</code> declarations that were not known when it was built, become phantom classes.
+ *
+ * Snapshots are built from the running JVM by reflection, with {@link #main(String[])}.
+ */
+public class LibraryStubs {
+	private static final int MAGIC = 0x53545542, VERSION = 1;
+
+	/** The classes every snapshot contains, since the code generator refers to them directly. */
+	public static final List<String> DEFAULT_CLASSES = Collections.unmodifiableList(Arrays.asList(
+			"java.lang.Object", "java.lang.String"));
+
+	private LibraryStubs() {}
+
+	/** Writes a snapshot of the given classes and all their supertypes to the given stream. */
+	public static void write(Iterable<Class<?>> classes, OutputStream out) throws IOException {
+		Set<Class<?>> closure = new LinkedHashSet<Class<?>>();
+		for(Class<?> klass : classes)
+			addWithSupertypes(klass, closure);
+
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+		dout.writeInt(MAGIC);
+		dout.writeInt(VERSION);
+		dout.writeInt(closure.size());
+		for(Class<?> klass : closure) {
+			dout.writeUTF(klass.getName());
+			dout.writeInt(klass.getModifiers() & (java.lang.reflect.Modifier.classModifiers() | java.lang.reflect.Modifier.INTERFACE));
+			dout.writeUTF(klass.getSuperclass() == null ? "" : klass.getSuperclass().getName());
+			dout.writeInt(klass.getInterfaces().length);
+			for(Class<?> iface : klass.getInterfaces())
+				dout.writeUTF(iface.getName());
+
+			List<Field> fields = new ArrayList<Field>();
+			for(Field field : klass.getDeclaredFields())
+				if(isVisible(field.getModifiers()) && !field.isSynthetic())
+					fields.add(field);
+			dout.writeInt(fields.size());
+			for(Field field : fields) {
+				dout.writeUTF(field.getName());
+				dout.writeUTF(field.getType().getTypeName());
+				dout.writeInt(field.getModifiers() & java.lang.reflect.Modifier.fieldModifiers());
+			}
+
+			List<Method> methods = new ArrayList<Method>();
+			for(Method method : klass.getDeclaredMethods())
+				if(isVisible(method.getModifiers()) && !method.isSynthetic())
+					methods.add(method);
+			List<Constructor<?>> ctors = new ArrayList<Constructor<?>>();
+			for(Constructor<?> ctor : klass.getDeclaredConstructors())
+				if(isVisible(ctor.getModifiers()) && !ctor.isSynthetic())
+					ctors.add(ctor);
+			dout.writeInt(methods.size() + ctors.size());
+			for(Method method : methods)
+				writeMethod(dout, method.getName(), method.getParameterTypes(), method.getReturnType(),
+						method.getModifiers() & java.lang.reflect.Modifier.methodModifiers());
+			for(Constructor<?> ctor : ctors)
+				writeMethod(dout, SootMethod.constructorName, ctor.getParameterTypes(), void.class,
+						ctor.getModifiers() & java.lang.reflect.Modifier.constructorModifiers());
+		}
+		dout.flush();
+	}
+
+	private static void addWithSupertypes(Class<?> klass, Set<Class<?>> closure) {
+		if(klass == null || closure.contains(klass))
+			return;
+		// supertypes go first, so they already exist when the class is installed
+		addWithSupertypes(klass.getSuperclass(), closure);
+		for(Class<?> iface : klass.getInterfaces())
+			addWithSupertypes(iface, closure);
+		closure.add(klass);
+	}
+
+	private static boolean isVisible(int modifiers) {
+		return java.lang.reflect.Modifier.isPublic(modifiers) || java.lang.reflect.Modifier.isProtected(modifiers);
+	}
+
+	private static void writeMethod(DataOutputStream out, String name, Class<?>[] parms, Class<?> ret, int modifiers) throws IOException {
+		out.writeUTF(name);
+		out.writeInt(parms.length);
+		for(Class<?> parm : parms)
+			out.writeUTF(parm.getTypeName());
+		out.writeUTF(ret.getTypeName());
+		out.writeInt(modifiers);
+	}
+
+	/**
+	 * Resets Soot and sets up the scene from the snapshot in the given stream; returns the number of
+	 * classes installed.
+	 */
+	public static int install(InputStream in) throws IOException {
+		DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+		if(din.readInt() != MAGIC || din.readInt() != VERSION)
+			throw new IOException("not a library stub snapshot");
+
+		G.reset();
+		Options.v().set_soot_classpath("");
+		Options.v().set_prepend_classpath(false);
+		Options.v().set_allow_phantom_refs(true);
+
+		Scene scene = Scene.v();
+		int n = din.readInt();
+		for(int i=0;i<n;++i) {
+			SootClass klass = new SootClass(din.readUTF(), din.readInt());
+			String superName = din.readUTF();
+			if(!superName.isEmpty())
+				klass.setSuperclass(scene.getSootClass(superName));
+			for(int j=din.readInt();j>0;--j)
+				klass.addInterface(scene.getSootClass(din.readUTF()));
+
+			for(int j=din.readInt();j>0;--j) {
+				String name = din.readUTF();
+				Type type = parseType(din.readUTF());
+				klass.addField(new SootField(name, type, din.readInt()));
+			}
+
+			for(int j=din.readInt();j>0;--j) {
+				String name = din.readUTF();
+				List<Type> parms = new ArrayList<Type>();
+				for(int k=din.readInt();k>0;--k)
+					parms.add(parseType(din.readUTF()));
+				Type ret = parseType(din.readUTF());
+				klass.addMethod(new SootMethod(name, parms, ret, din.readInt()));
+			}
+
+			scene.addClass(klass);
+			klass.setLibraryClass();
+			klass.setResolvingLevel(SootClass.SIGNATURES);
+		}
+		return n;
+	}
+
+	/** Like {@link #install(InputStream)}, but reads the snapshot from the given file. */
+	public static int install(String file) throws IOException {
+		try(InputStream in = new FileInputStream(file)) {
+			return install(in);
+		}
+	}
+
+	/** Parses a type name as returned by {@link Class#getTypeName()}. */
+	private static Type parseType(String name) {
+		int dims = 0;
+		while(name.endsWith("[]")) {
+			name = name.substring(0, name.length() - 2);
+			++dims;
+		}
+		Type base;
+		switch(name) {
+		case "void": base = VoidType.v(); break;
+		case "boolean": base = BooleanType.v(); break;
+		case "byte": base = ByteType.v(); break;
+		case "char": base = CharType.v(); break;
+		case "short": base = ShortType.v(); break;
+		case "int": base = IntType.v(); break;
+		case "long": base = LongType.v(); break;
+		case "float": base = FloatType.v(); break;
+		case "double": base = DoubleType.v(); break;
+		default: base = RefType.v(name);
+		}
+		return dims == 0 ? base : ArrayType.v(base, dims);
+	}
+
+	/**
+	 * Writes a snapshot of the {@link #DEFAULT_CLASSES} and the classes named by the remaining
+	 * arguments to the file named by the first argument.
+	 */
+	public static void main(String[] args) throws IOException, ClassNotFoundException {
+		if(args.length == 0) {
+			System.err.println("usage: LibraryStubs <output file> [class name...]");
+			System.exit(1);
+		}
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		for(String name : DEFAULT_CLASSES)
+			classes.add(Class.forName(name));
+		for(int i=1;i<args.length;++i)
+			classes.add(Class.forName(args[i]));
+		try(OutputStream out = new FileOutputStream(args[0])) {
+			write(classes, out);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package frontend;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lexer.Lexer;
+import frontend.Token.Type;
+
+/**
+ * The exported interface of a module, as far as it can be determined from its token stream alone:
+ * the module's name, the names of the modules it imports, and the headers of its public
+ * declarations (function signatures, fields and type declarations).
+ *
+ * Two versions of a module with the same interface are interchangeable for the modules that
+ * import it, so the interface is used to decide whether importing modules have to be recompiled.
+ */
+public class ModuleInterface {
+	private final String name;
+	private final List<String> imports;
+	private final String signature;
+
+	private ModuleInterface(String name, List<String> imports, String signature) {
+		this.name = name;
+		this.imports = imports;
+		this.signature = signature;
+	}
+
+	/** The name of the module. */
+	public String getName() {
+		return name;
+	}
+
+	/** The names of the modules imported by this module, in declaration order. */
+	public List<String> getImports() {
+		return imports;
+	}
+
+	/** A canonical textual representation of the module's public declaration headers. */
+	public String getSignature() {
+		return signature;
+	}
+
+	/** Determines the interface of the module with the given source code. */
+	public static ModuleInterface scan(String source) throws IOException {
+		Lexer lexer = new Lexer(new StringReader(source));
+		String name = null;
+		List<String> imports = new ArrayList<String>();
+		StringBuilder signature = new StringBuilder();
+
+		// depth of curly braces; top-level declarations are at depth 1
+		int depth = 0;
+		Token prev = null;
+		boolean inHeader = false;
+		for(Token tk = lexer.nextToken(); !tk.isEOF(); prev = tk, tk = lexer.nextToken()) {
+			Type type = tk.getType();
+			if(depth == 0 && prev != null && prev.getType() == Type.MODULE && type == Type.ID) {
+				name = tk.getText();
+			} else if(depth == 1 && prev != null && prev.getType() == Type.IMPORT && type == Type.ID) {
+				imports.add(tk.getText());
+			} else if(depth == 1 && type == Type.PUBLIC) {
+				inHeader = true;
+			}
+
+			if(inHeader) {
+				// a header ends at the opening brace of a function body or at a semicolon
+				if(type == Type.LCURLY || type == Type.SEMICOLON) {
+					signature.append(';');
+					inHeader = false;
+				} else {
+					signature.append(type).append(' ').append(tk.getText()).append(' ');
+				}
+			}
+
+			if(type == Type.LCURLY)
+				++depth;
+			else if(type == Type.RCURLY)
+				--depth;
+		}
+		return new ModuleInterface(name, Collections.unmodifiableList(imports), signature.toString());
+	}
+}
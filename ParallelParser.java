@@ -0,0 +1,152 @@
+package frontend;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import lexer.Lexer;
+import lexer.LexicalException;
+import parser.Parser;
+import ast.Module;
+import ast.Program;
+
+/**
+ * This class lexes and parses a collection of module sources concurrently on a worker pool.
+ *
+ * Every source gets its own lexer and parser, so no state is shared between the tasks. The parsed
+ * modules are assembled into a program in the order the sources were given, regardless of the order
+ * in which the tasks finish, and the errors of all sources are collected instead of stopping at the
+ * first one.
+ */
+public class ParallelParser {
+	/** The result of parsing a collection of sources: the program of all modules that parsed successfully, and all errors. */
+	public static class Result {
+		private final Program program;
+		private final List<String> errors;
+
+		private Result(Program program, List<String> errors) {
+			this.program = program;
+			this.errors = Collections.unmodifiableList(errors);
+		}
+
+		/** A program consisting of all modules that could be parsed, in source order. */
+		public Program getProgram() {
+			return program;
+		}
+
+		/** The lexical and syntax errors of all sources, in source order. */
+		public List<String> getErrors() {
+			return errors;
+		}
+
+		public boolean hasErrors() {
+			return !errors.isEmpty();
+		}
+	}
+
+	/** A source to be parsed, identified by a name used in error messages. */
+	private static abstract class Source {
+		final String name;
+
+		Source(String name) {
+			this.name = name;
+		}
+
+		abstract Lexer open() throws IOException;
+	}
+
+	private final ForkJoinPool pool;
+
+	public ParallelParser() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public ParallelParser(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/** Parses the given module sources; errors are reported with the index of the source they occur in. */
+	public Result parse(Iterable<String> sources) {
+		List<Source> srcs = new ArrayList<Source>();
+		for(final String src : sources) {
+			srcs.add(new Source("source " + srcs.size()) {
+				@Override
+				Lexer open() {
+					return new Lexer(new StringReader(src));
+				}
+			});
+		}
+		return run(srcs);
+	}
+
+	/** Parses the modules in the given source files; errors are reported with the path of the file they occur in. */
+	public Result parseFiles(Iterable<Path> files) {
+		List<Source> srcs = new ArrayList<Source>();
+		for(final Path file : files) {
+			srcs.add(new Source(file.toString()) {
+				@Override
+				Lexer open() throws IOException {
+					return Lexer.fromFile(file);
+				}
+			});
+		}
+		return run(srcs);
+	}
+
+	private Result run(List<Source> srcs) {
+		// lexical, syntax and I/O errors are recorded by the tasks themselves, indexed by source
+		final String[] failures = new String[srcs.size()];
+		List<Callable<Module>> tasks = new ArrayList<Callable<Module>>();
+		for(int i=0;i<srcs.size();++i) {
+			final Source src = srcs.get(i);
+			final int idx = i;
+			tasks.add(new Callable<Module>() {
+				@Override
+				public Module call() {
+					try {
+						return (Module)new Parser().parse(src.open());
+					} catch(beaver.Parser.Exception e) {
+						failures[idx] = e.getMessage();
+					} catch(LexicalException e) {
+						failures[idx] = e.getMessage();
+					} catch(IOException e) {
+						failures[idx] = e.getMessage();
+					}
+					return null;
+				}
+			});
+		}
+
+		// collect results in the original order, so the program and the errors are deterministic
+		List<Future<Module>> results = pool.invokeAll(tasks);
+		ast.List<Module> modules = new ast.List<Module>();
+		List<String> errors = new ArrayList<String>();
+		try {
+			for(int i=0;i<srcs.size();++i) {
+				try {
+					Module module = results.get(i).get();
+					if(module != null)
+						modules.add(module);
+					else
+						errors.add(srcs.get(i).name + ": " + failures[i]);
+				} catch(ExecutionException e) {
+					// lexical, syntax and I/O errors are recorded above; anything else is not a diagnostic
+					if(e.getCause() instanceof Error)
+						throw (Error)e.getCause();
+					throw (RuntimeException)e.getCause();
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		return new Result(new Program(modules), errors);
+	}
+}
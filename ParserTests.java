@@ -1,10 +1,22 @@
 package test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.StringReader;
+import java.util.Arrays;
+
+import ast.Declaration;
+import ast.Module;
+import frontend.IncrementalParser;
+import frontend.ParallelParser;
 
 import lexer.Lexer;
+import lexer.LexicalException;
 
 import org.junit.Test;
 
@@ -172,4 +184,93 @@ public class ParserTests {
 				"}"
 			);
 		}
+
+		@Test
+		public void testParallelParsing() {
+			ParallelParser.Result res = new ParallelParser().parse(Arrays.asList(
+				"module A { import B; public int f() { return 1; } }",
+				"module B { import ; }",
+				"module C { }",
+				"module D { public int x }",
+				"module E { int % }"));
+			assertEquals(2, res.getProgram().getNumModule());
+			assertEquals(3, res.getErrors().size());
+			assertTrue(res.getErrors().get(0).startsWith("source 1: "));
+			assertTrue(res.getErrors().get(1).startsWith("source 3: "));
+			assertEquals("source 4: unexpected character '%'", res.getErrors().get(2));
+		}
+
+		@Test
+		public void testIncrementalParsing() throws Exception {
+			String src = "module Test {\n  import Other;\n  public int f(int x) {\n    return x + 1;\n  }\n  int y;\n  public type s = \"str\";\n}";
+			IncrementalParser parser = new IncrementalParser(src);
+			Module module = parser.getModule();
+			Declaration f = module.getDeclaration(0), y = module.getDeclaration(1), s = module.getDeclaration(2);
+
+			// an edit inside a function body only replaces that function
+			parser.edit(src.indexOf("x + 1"), 5, "x * (x - 1)");
+			assertSame(module, parser.getModule());
+			assertEquals(1, parser.getChangedDeclarations().size());
+			assertNotSame(f, module.getDeclaration(0));
+			assertSame(y, module.getDeclaration(1));
+			assertSame(s, module.getDeclaration(2));
+
+			// adding a declaration re-parses the whole module
+			parser.edit(parser.getText().indexOf("int y;"), 0, "int z; ");
+			assertNull(parser.getChangedDeclarations());
+			assertEquals(4, parser.getModule().getNumDeclaration());
+
+			// so does a syntax error, once it is fixed again
+			try {
+				parser.edit(parser.getText().indexOf("int z;"), 6, "int z");
+				fail("Edit was supposed to fail, but succeeded");
+			} catch (beaver.Parser.Exception e) {
+			}
+			parser.edit(parser.getText().indexOf("int z"), 5, "int w;");
+			assertEquals(4, parser.getModule().getNumDeclaration());
+		}
+
+		@Test
+		public void testIncrementalParsingAfterErrorInBody() throws Exception {
+			String src = "module Test {\n  public int f(int x) {\n    return x + 1;\n  }\n  public int g() {\n    return 2;\n  }\n}";
+			IncrementalParser parser = new IncrementalParser(src);
+
+			// a syntax error inside the body of f
+			try {
+				parser.edit(src.indexOf("x + 1"), 5, "x +");
+				fail("Edit was supposed to fail, but succeeded");
+			} catch (beaver.Parser.Exception e) {
+			}
+
+			// an edit to g re-parses the whole module instead of keeping the old version of f around
+			try {
+				parser.edit(parser.getText().indexOf("2"), 1, "3");
+				fail("Edit was supposed to fail, but succeeded");
+			} catch (beaver.Parser.Exception e) {
+			}
+			assertNull(parser.getModule());
+
+			parser.edit(parser.getText().indexOf("x +"), 3, "x + 5");
+			assertNull(parser.getChangedDeclarations());
+			assertEquals(2, parser.getModule().getNumDeclaration());
+		}
+
+		@Test
+		public void testIncrementalParsingAfterLexicalError() throws Exception {
+			String src = "module Test {\n  public int f(int x) {\n    return x + 1;\n  }\n  public int g() {\n    return 2;\n  }\n}";
+			IncrementalParser parser = new IncrementalParser(src);
+
+			// the edit is rejected, and the next one re-parses the whole module
+			try {
+				parser.edit(src.indexOf("+"), 1, "%");
+				fail("Edit was supposed to fail, but succeeded");
+			} catch (LexicalException e) {
+			}
+			assertEquals(src, parser.getText());
+			assertNull(parser.getModule());
+
+			parser.edit(parser.getText().indexOf("2"), 1, "3");
+			assertNull(parser.getChangedDeclarations());
+			assertEquals(2, parser.getModule().getNumDeclaration());
+		}
 	}
\ No newline at end of file
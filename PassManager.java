@@ -0,0 +1,227 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import soot.Body;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.jimple.toolkits.scalar.ConstantPropagatorAndFolder;
+import soot.jimple.toolkits.scalar.CopyPropagator;
+import soot.jimple.toolkits.scalar.DeadAssignmentEliminator;
+import soot.jimple.toolkits.scalar.UnusedLocalEliminator;
+import soot.toolkits.scalar.LocalPacker;
+
+/**
+ * This class runs an ordered pipeline of optimisation passes over the Jimple code generated for a
+ * program, between code generation and class file assembly.
+ *
+ * Every pass has a minimum {@link Level}; the passes at or below the level the pass manager was created
+ * with are enabled by default, but every pass can be toggled individually by name. The time spent in
+ * every pass is recorded.
+ */
+public class PassManager {
+	/** Optimisation levels. */
+	public enum Level {
+		/** No optimisation. */
+		O0,
+		/** Cheap intraprocedural clean-ups. */
+		O1,
+		/** All optimisations, including inlining. */
+		O2;
+
+		/** Parses a level given as a command line flag such as <code>-O2</code>. */
+		public static Level parse(String flag) {
+			return valueOf(flag.startsWith("-") ? flag.substring(1) : flag);
+		}
+	}
+
+	/** A single pass of the pipeline. */
+	public static abstract class Pass {
+		private final String name;
+		private final Level level;
+		private boolean enabled;
+		private long time;
+
+		protected Pass(String name, Level level) {
+			this.name = name;
+			this.level = level;
+		}
+
+		/** Runs this pass over the given classes. */
+		protected abstract void run(Iterable<SootClass> classes);
+
+		public String getName() {
+			return name;
+		}
+
+		/** The lowest optimisation level at which this pass is enabled by default. */
+		public Level getLevel() {
+			return level;
+		}
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		/** The total time spent in this pass, in nanoseconds. */
+		public long getTime() {
+			return time;
+		}
+	}
+
+	/** A pass that transforms every method body on its own. */
+	public static abstract class BodyPass extends Pass {
+		protected BodyPass(String name, Level level) {
+			super(name, level);
+		}
+
+		/** Transforms the given method body. */
+		protected abstract void run(Body body);
+
+		@Override
+		protected void run(Iterable<SootClass> classes) {
+			for(SootClass klass : classes)
+				for(SootMethod method : klass.getMethods())
+					if(method.hasActiveBody())
+						run(method.getActiveBody());
+		}
+	}
+
+	private final Level level;
+	private final List<Pass> passes = new ArrayList<Pass>();
+
+	public PassManager(Level level) {
+		this.level = level;
+		addDefaultPasses();
+	}
+
+	private void addDefaultPasses() {
+		add(new Pass("inlining", Level.O2) {
+			@Override
+			protected void run(Iterable<SootClass> classes) {
+				new Inliner().inline(classes);
+			}
+		});
+		add(new BodyPass("cfg-cleanup", Level.O1) {
+			private final CfgCleaner cleaner = new CfgCleaner();
+			@Override
+			protected void run(Body body) {
+				cleaner.clean(body);
+			}
+		});
+		add(new BodyPass("constant-propagation", Level.O1) {
+			@Override
+			protected void run(Body body) {
+				ConstantPropagatorAndFolder.v().transform(body);
+			}
+		});
+		add(new BodyPass("value-numbering", Level.O2) {
+			private final ValueNumbering numbering = new ValueNumbering();
+			@Override
+			protected void run(Body body) {
+				numbering.eliminate(body);
+			}
+		});
+		add(new BodyPass("copy-propagation", Level.O1) {
+			@Override
+			protected void run(Body body) {
+				CopyPropagator.v().transform(body);
+			}
+		});
+		add(new BodyPass("strength-reduction", Level.O1) {
+			private final StrengthReducer reducer = new StrengthReducer();
+			@Override
+			protected void run(Body body) {
+				reducer.reduce(body);
+			}
+		});
+		add(new BodyPass("dead-assignment-elimination", Level.O1) {
+			@Override
+			protected void run(Body body) {
+				DeadAssignmentEliminator.v().transform(body);
+				UnusedLocalEliminator.v().transform(body);
+			}
+		});
+		add(new BodyPass("temp-packing", Level.O1) {
+			private final TempPacker packer = new TempPacker();
+			@Override
+			protected void run(Body body) {
+				packer.pack(body);
+			}
+		});
+		add(new BodyPass("local-packing", Level.O2) {
+			@Override
+			protected void run(Body body) {
+				LocalPacker.v().transform(body);
+			}
+		});
+	}
+
+	/** Appends the given pass to the pipeline; it is enabled if its level is at most the level of this pass manager. */
+	public void add(Pass pass) {
+		pass.enabled = pass.getLevel().compareTo(level) <= 0;
+		passes.add(pass);
+	}
+
+	/** Returns the pass with the given name. */
+	public Pass getPass(String name) {
+		for(Pass pass : passes)
+			if(pass.getName().equals(name))
+				return pass;
+		throw new IllegalArgumentException("no such pass: " + name);
+	}
+
+	/** Enables or disables the pass with the given name. */
+	public void setEnabled(String name, boolean enabled) {
+		getPass(name).enabled = enabled;
+	}
+
+	/** The passes of the pipeline, in order. */
+	public List<Pass> getPasses() {
+		return Collections.unmodifiableList(passes);
+	}
+
+	/**
+	 * A description of the passes that are enabled, such as <code>O1:cfg-cleanup,copy-propagation</code>;
+	 * two pass managers with the same configuration generate the same code.
+	 */
+	public String getConfiguration() {
+		StringBuilder res = new StringBuilder(level.name()).append(':');
+		String sep = "";
+		for(Pass pass : passes) {
+			if(pass.isEnabled()) {
+				res.append(sep).append(pass.getName());
+				sep = ",";
+			}
+		}
+		return res.toString();
+	}
+
+	/** The optimisation level of this pass manager. */
+	public Level getLevel() {
+		return level;
+	}
+
+	/** Runs all enabled passes over the given classes, in order. */
+	public void run(Iterable<SootClass> classes) {
+		for(Pass pass : passes) {
+			if(!pass.isEnabled())
+				continue;
+			long start = System.nanoTime();
+			pass.run(classes);
+			pass.time += System.nanoTime() - start;
+		}
+	}
+
+	/** Returns the time spent in every pass so far, in nanoseconds. */
+	public Map<String, Long> getTimings() {
+		Map<String, Long> res = new LinkedHashMap<String, Long>();
+		for(Pass pass : passes)
+			res.put(pass.getName(), pass.getTime());
+		return res;
+	}
+}
@@ -0,0 +1,24 @@
+package driver;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event recording a single run of a compiler phase.
+ */
+@Name("compiler.Phase")
+@Label("Compiler Phase")
+@Category("Compiler")
+@Description("A single run of a compiler phase")
+class PhaseEvent extends Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocatedBytes;
+}
@@ -0,0 +1,77 @@
+package driver;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An embeddable host for compiled programs: compiles programs from source, keeps them loaded under a
+ * name, and evicts them again when they are no longer needed, so that long-running hosts do not
+ * accumulate classes.
+ *
+ * Compilation goes through Soot's global state and holds {@link Compiler#SOOT_LOCK}; invoking loaded
+ * programs does not.
+ */
+public class ProgramHost implements AutoCloseable {
+	private final Compiler compiler;
+	private final Map<String, CompiledProgram> programs = new LinkedHashMap<String, CompiledProgram>();
+
+	public ProgramHost() {
+		this(new Compiler());
+	}
+
+	public ProgramHost(Compiler compiler) {
+		this.compiler = compiler;
+	}
+
+	/**
+	 * Compiles and loads the program with the given module sources under the given name; a program
+	 * previously loaded under that name is evicted.
+	 */
+	public CompiledProgram load(String name, Iterable<String> sources) throws IOException, CompilationException {
+		Map<String, byte[]> classes;
+		Compiler.SOOT_LOCK.lock();
+		try {
+			classes = compiler.compile(sources);
+		} finally {
+			Compiler.SOOT_LOCK.unlock();
+		}
+		CompiledProgram prog = new CompiledProgram(classes);
+		CompiledProgram prev;
+		synchronized(programs) {
+			prev = programs.put(name, prog);
+		}
+		if(prev != null)
+			prev.close();
+		return prog;
+	}
+
+	/** Returns the program loaded under the given name, or <code>null</code>. */
+	public CompiledProgram get(String name) {
+		synchronized(programs) {
+			return programs.get(name);
+		}
+	}
+
+	/** Closes and forgets the program loaded under the given name; returns whether there was one. */
+	public boolean evict(String name) {
+		CompiledProgram prog;
+		synchronized(programs) {
+			prog = programs.remove(name);
+		}
+		if(prog == null)
+			return false;
+		prog.close();
+		return true;
+	}
+
+	/** Evicts all programs. */
+	@Override
+	public void close() {
+		synchronized(programs) {
+			for(CompiledProgram prog : programs.values())
+				prog.close();
+			programs.clear();
+		}
+	}
+}
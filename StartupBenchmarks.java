@@ -0,0 +1,70 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.options.Options;
+import backend.LibraryStubs;
+
+/**
+ * JMH benchmarks for setting up a Soot context: resolving the library classes referenced by generated
+ * code from the JDK, versus installing them from a {@link LibraryStubs} snapshot.
+ *
+ * These are single-shot measurements in fresh JVMs without warm-up, since what matters for short
+ * compiles is the cost of the very first setup.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class StartupBenchmarks {
+	private byte[] snapshot;
+
+	@Setup(Level.Trial)
+	public void buildSnapshot() throws IOException, ClassNotFoundException {
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		for(String name : LibraryStubs.DEFAULT_CLASSES)
+			classes.add(Class.forName(name));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LibraryStubs.write(classes, out);
+		snapshot = out.toByteArray();
+	}
+
+	@Benchmark
+	public SootClass classpath() {
+		G.reset();
+		Options.v().set_prepend_classpath(true);
+		Options.v().set_allow_phantom_refs(true);
+		SootClass res = null;
+		for(String name : LibraryStubs.DEFAULT_CLASSES)
+			res = Scene.v().loadClassAndSupport(name);
+		return res;
+	}
+
+	@Benchmark
+	public SootClass stubs() throws IOException {
+		LibraryStubs.install(new ByteArrayInputStream(snapshot));
+		return Scene.v().getSootClass("java.lang.String");
+	}
+}
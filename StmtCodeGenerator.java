@@ -1,19 +1,42 @@
 package backend;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import soot.Local;
+import soot.SootField;
 import soot.Unit;
 import soot.Value;
-import soot.jimple.IntConstant;
+import soot.jimple.IdentityStmt;
 import soot.jimple.Jimple;
 import soot.jimple.NopStmt;
 import soot.util.Chain;
+import ast.ASTNode;
+import ast.AddExpr;
+import ast.ArrayLiteral;
+import ast.Assignment;
+import ast.BinaryExpr;
 import ast.Block;
 import ast.BreakStmt;
+import ast.Call;
+import ast.Expr;
 import ast.ExprStmt;
+import ast.FunctionDeclaration;
 import ast.IfStmt;
+import ast.IntLiteral;
+import ast.MulExpr;
+import ast.NegExpr;
+import ast.Parameter;
 import ast.ReturnStmt;
 import ast.Stmt;
+import ast.SubExpr;
+import ast.VarDecl;
+import ast.VarName;
 import ast.Visitor;
 import ast.WhileStmt;
 
@@ -34,6 +57,15 @@ public class StmtCodeGenerator extends Visitor<Void> {
 	/** A map from while statements to their break target. */
 	private final HashMap<WhileStmt, Unit> breakTargets = new HashMap<WhileStmt, Unit>();
 	
+	/** Values of loop-invariant expressions computed ahead of the loops currently being generated. */
+	private final Map<Expr, Value> hoisted = new IdentityHashMap<Expr, Value>();
+	
+	/** The template fields of constant array literals generated so far. */
+	private final Map<ArrayLiteral, SootField> templates = new IdentityHashMap<ArrayLiteral, SootField>();
+	
+	/** The jump target for self-recursive tail calls, created on demand. */
+	private NopStmt entry_ = null;
+	
 	public StmtCodeGenerator(FunctionCodeGenerator fcg) {
 		this.fcg = fcg;
 		this.units = fcg.getBody().getUnits();
@@ -42,7 +74,7 @@ public class StmtCodeGenerator extends Visitor<Void> {
 	/** Generates code for an expression statement. */
 	@Override
 	public Void visitExprStmt(ExprStmt nd) {
-		ExprCodeGenerator.generate(nd.getExpr(), fcg);
+		ExprCodeGenerator.generate(nd.getExpr(), fcg, hoisted, templates);
 		return null;
 	}
 	
@@ -68,21 +100,73 @@ public class StmtCodeGenerator extends Visitor<Void> {
 	/** Generates code for a return statement. */
 	@Override
 	public Void visitReturnStmt(ReturnStmt nd) {
+		if(nd.hasExpr() && nd.getExpr() instanceof Call) {
+			Call call = (Call)nd.getExpr();
+			if(call.getCallTarget() == enclosingFunction(nd)) {
+				generateTailCall(call);
+				return null;
+			}
+		}
 		Unit stmt;
 		if(nd.hasExpr())
-			stmt = j.newReturnStmt(ExprCodeGenerator.generate(nd.getExpr(), fcg));
+			stmt = j.newReturnStmt(ExprCodeGenerator.generate(nd.getExpr(), fcg, hoisted, templates));
 		else
 			stmt = j.newReturnVoidStmt();
 		units.add(stmt);
 		return null;
 	}
 	
+	private static FunctionDeclaration enclosingFunction(ASTNode<?> nd) {
+		while(!(nd instanceof FunctionDeclaration))
+			nd = nd.getParent();
+		return (FunctionDeclaration)nd;
+	}
+	
+	/**
+	 * Generates code for a self-recursive call in tail position: the arguments are assigned to the
+	 * parameters, followed by a jump back to the start of the function body, so that the recursion
+	 * runs in constant stack space.
+	 */
+	private void generateTailCall(Call call) {
+		FunctionDeclaration fn = call.getCallTarget();
+		List<Local> parms = new ArrayList<Local>();
+		for(Parameter parm : fn.getParameters())
+			parms.add(fcg.getSootLocal(parm));
+		Value[] args = new Value[call.getNumArgument()];
+		for(int i=0;i<args.length;++i)
+			args[i] = ExprCodeGenerator.generate(call.getArgument(i), fcg, hoisted, templates);
+		// an argument reading a parameter that is assigned before it has to be read from a copy
+		for(int i=0;i<args.length;++i) {
+			int k = parms.indexOf(args[i]);
+			if(k >= 0 && k < i) {
+				Local temp = fcg.mkTemp(args[i].getType());
+				units.add(j.newAssignStmt(temp, args[i]));
+				args[i] = temp;
+			}
+		}
+		for(int i=0;i<args.length;++i)
+			units.add(j.newAssignStmt(parms.get(i), args[i]));
+		
+		boolean placeEntry = entry_ == null;
+		if(placeEntry)
+			entry_ = j.newNopStmt();
+		units.add(j.newGotoStmt(entry_));
+		if(placeEntry) {
+			// the function body starts right after the identity statements binding the parameters
+			for(Unit u : units) {
+				if(!(u instanceof IdentityStmt)) {
+					units.insertBefore(entry_, u);
+					break;
+				}
+			}
+		}
+	}
+	
 	/** Generates code for an if statement. */
 	@Override
 	public Void visitIfStmt(IfStmt nd) {
-		Value cond = ExprCodeGenerator.generate(nd.getExpr(), fcg);
 		NopStmt join = j.newNopStmt();
-		units.add(j.newIfStmt(j.newEqExpr(cond, IntConstant.v(0)), join));
+		ExprCodeGenerator.generateBranch(nd.getExpr(), false, join, fcg, hoisted, templates);
 		nd.getThen().accept(this);
 		if(nd.hasElse()) {
 			NopStmt els = join;
@@ -95,21 +179,85 @@ public class StmtCodeGenerator extends Visitor<Void> {
 		return null;
 	}
 		
-	/** Generates code for a while statement. */
+	/**
+	 * Generates code for a while statement. The loop is rotated into a guarded do-while loop, so
+	 * that every iteration only evaluates the condition at the bottom of the loop; pure
+	 * loop-invariant expressions are computed once, between the guard and the loop body.
+	 */
 	@Override
 	public Void visitWhileStmt(WhileStmt nd) {
-		/* TODO: generate code for while statement as discussed in lecture; add the NOP statement you
-		 *       generate as the break target to the breakTargets map
-		 */
 		NopStmt start_ = j.newNopStmt();
 		NopStmt exit_ = j.newNopStmt();
 		breakTargets.put(nd, exit_);
+		ExprCodeGenerator.generateBranch(nd.getExpr(), false, exit_, fcg, hoisted, templates);
+		List<Expr> invariants = new ArrayList<Expr>();
+		findInvariants(nd, assignedLocals(nd, new HashSet<VarDecl>()), invariants);
+		for(Expr expr : invariants)
+			hoisted.put(expr, ExprCodeGenerator.generate(expr, fcg, hoisted, templates));
 		units.add(start_);
-		Value cond = ExprCodeGenerator.generate(nd.getExpr(), fcg);
-		units.add(j.newIfStmt(j.newEqExpr(cond, IntConstant.v(0)), exit_));
 		nd.getBody().accept(this);
-		units.add(j.newGotoStmt(start_));
+		ExprCodeGenerator.generateBranch(nd.getExpr(), true, start_, fcg, hoisted, templates);
 		units.add(exit_);
+		for(Expr expr : invariants)
+			hoisted.remove(expr);
 		return null;
 	}
+	
+	/** Collects the declarations of all local variables assigned to within the given node. */
+	private static Set<VarDecl> assignedLocals(ASTNode<?> nd, Set<VarDecl> res) {
+		if(nd instanceof Assignment && ((Assignment)nd).getLHS() instanceof VarName)
+			res.add(((VarName)((Assignment)nd).getLHS()).decl());
+		for(int i=0;i<nd.getNumChild();++i)
+			assignedLocals(nd.getChild(i), res);
+		return res;
+	}
+	
+	/**
+	 * Determines whether the given expression is pure, cannot throw an exception, and only reads
+	 * local variables that are not in the given set.
+	 */
+	private static boolean isInvariant(Expr expr, Set<VarDecl> assigned) {
+		if(expr instanceof IntLiteral)
+			return true;
+		if(expr instanceof VarName) {
+			VarDecl decl = ((VarName)expr).decl();
+			return decl.isLocal() && !assigned.contains(decl);
+		}
+		if(expr instanceof NegExpr)
+			return isInvariant(((NegExpr)expr).getOperand(), assigned);
+		if(expr instanceof AddExpr || expr instanceof SubExpr || expr instanceof MulExpr) {
+			BinaryExpr bin = (BinaryExpr)expr;
+			return isInvariant(bin.getLeft(), assigned) && isInvariant(bin.getRight(), assigned);
+		}
+		return false;
+	}
+	
+	/**
+	 * Collects the maximal invariant binary expressions within the given node that read at least
+	 * one variable and have not already been hoisted out of an enclosing loop.
+	 */
+	private void findInvariants(ASTNode<?> nd, Set<VarDecl> assigned, List<Expr> res) {
+		if(hoisted.containsKey(nd))
+			return;
+		if(nd instanceof BinaryExpr && isInvariant((Expr)nd, assigned) && readsVariable(nd)) {
+			res.add((Expr)nd);
+			return;
+		}
+		// the left hand side of an assignment to a variable is not evaluated
+		if(nd instanceof Assignment && ((Assignment)nd).getLHS() instanceof VarName) {
+			findInvariants(((Assignment)nd).getRHS(), assigned, res);
+			return;
+		}
+		for(int i=0;i<nd.getNumChild();++i)
+			findInvariants(nd.getChild(i), assigned, res);
+	}
+	
+	private static boolean readsVariable(ASTNode<?> nd) {
+		if(nd instanceof VarName)
+			return true;
+		for(int i=0;i<nd.getNumChild();++i)
+			if(readsVariable(nd.getChild(i)))
+				return true;
+		return false;
+	}
 }
@@ -0,0 +1,132 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import soot.Body;
+import soot.IntType;
+import soot.Local;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.BinopExpr;
+import soot.jimple.DivExpr;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.MulExpr;
+import soot.jimple.RemExpr;
+
+/**
+ * This class rewrites integer multiplications, divisions and remainders by constants into cheaper
+ * shift, mask and add/subtract sequences.
+ *
+ * Divisions and remainders by powers of two add a bias of <code>2^k-1</code> to negative dividends
+ * before shifting, so that the result is rounded towards zero exactly like Java's <code>/</code> and
+ * <code>%</code>. Multiplications are exact modulo <code>2^32</code> either way.
+ */
+public class StrengthReducer {
+	private final Jimple j = Jimple.v();
+
+	/** The body being transformed. */
+	private Body body;
+
+	/** Statements to insert before the statement being rewritten. */
+	private final List<Unit> prefix = new ArrayList<Unit>();
+
+	/** Rewrites all suitable statements in the given body; returns the number of rewritten statements. */
+	public int reduce(Body body) {
+		this.body = body;
+		int n = 0;
+		for(Unit u : new ArrayList<Unit>(body.getUnits())) {
+			if(!(u instanceof AssignStmt))
+				continue;
+			AssignStmt stmt = (AssignStmt)u;
+			if(!(stmt.getRightOp() instanceof BinopExpr) || !(stmt.getRightOp().getType() instanceof IntType))
+				continue;
+			prefix.clear();
+			Value res = reduce((BinopExpr)stmt.getRightOp());
+			if(res == null)
+				continue;
+			// the prefix takes over all jumps to the rewritten statement
+			if(!prefix.isEmpty())
+				body.getUnits().insertBefore(prefix, stmt);
+			stmt.setRightOp(res);
+			++n;
+		}
+		return n;
+	}
+
+	/** Returns the exponent k if the given value is <code>2^k</code>, and -1 otherwise. */
+	private static int log2(int c) {
+		return c > 0 && (c & (c - 1)) == 0 ? Integer.numberOfTrailingZeros(c) : -1;
+	}
+
+	private Local temp(Value v) {
+		Local res = j.newLocal("$sr" + body.getLocalCount(), IntType.v());
+		body.getLocals().add(res);
+		prefix.add(j.newAssignStmt(res, v));
+		return res;
+	}
+
+	/**
+	 * Computes <code>x + (x &lt; 0 ? 2^k-1 : 0)</code>, the biased dividend for a division by
+	 * <code>2^k</code>.
+	 */
+	private Local bias(Value x, int k) {
+		Local sign = temp(j.newShrExpr(x, IntConstant.v(31)));
+		Local adjust = temp(j.newUshrExpr(sign, IntConstant.v(32 - k)));
+		return temp(j.newAddExpr(x, adjust));
+	}
+
+	/** Returns a cheaper equivalent of the given expression, or <code>null</code>. */
+	private Value reduce(BinopExpr expr) {
+		Value x = expr.getOp1(), y = expr.getOp2();
+		if(expr instanceof MulExpr && x instanceof IntConstant && y instanceof Local) {
+			Value tmp = x;
+			x = y;
+			y = tmp;
+		}
+		if(!(x instanceof Local) || !(y instanceof IntConstant))
+			return null;
+		int c = ((IntConstant)y).value;
+		if(c == Integer.MIN_VALUE)
+			return null;
+		int k = log2(Math.abs(c));
+
+		if(expr instanceof MulExpr) {
+			if(c == -1)
+				return j.newNegExpr(x);
+			if(k > 0)
+				return c > 0 ? j.newShlExpr(x, IntConstant.v(k)) : j.newNegExpr(temp(j.newShlExpr(x, IntConstant.v(k))));
+			if(c > 2 && log2(c - 1) > 0)
+				return j.newAddExpr(temp(j.newShlExpr(x, IntConstant.v(log2(c - 1)))), x);
+			if(c > 2 && log2(c + 1) > 1)
+				return j.newSubExpr(temp(j.newShlExpr(x, IntConstant.v(log2(c + 1)))), x);
+			return null;
+		}
+
+		if(expr instanceof DivExpr) {
+			if(c == 1)
+				return x;
+			if(c == -1)
+				return j.newNegExpr(x);
+			if(k > 0) {
+				Local q = temp(j.newShrExpr(bias(x, k), IntConstant.v(k)));
+				return c > 0 ? q : j.newNegExpr(q);
+			}
+			return null;
+		}
+
+		if(expr instanceof RemExpr) {
+			// the sign of the remainder follows the dividend, so the sign of the divisor does not matter
+			if(k == 0)
+				return IntConstant.v(0);
+			if(k > 0) {
+				Local rounded = temp(j.newAndExpr(bias(x, k), IntConstant.v(-(1 << k))));
+				return j.newSubExpr(x, rounded);
+			}
+			return null;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,86 @@
+package lexer;
+
+import java.util.Arrays;
+
+/**
+ * A table of interned identifiers. Identifiers are looked up directly in the scanner's character
+ * buffer, so a string is only allocated the first time an identifier is seen.
+ */
+public class SymbolTable {
+	/** Open-addressing hash table mapping to symbol indices plus one; zero marks free slots. */
+	private int[] table = new int[256];
+	private String[] symbols = new String[64];
+	private int[] hashes = new int[64];
+	private int size = 0;
+
+	private static int hash(char[] buf, int offset, int length) {
+		int h = 0;
+		for(int i=0;i<length;++i)
+			h = 31*h + buf[offset+i];
+		return h;
+	}
+
+	private static boolean matches(String sym, char[] buf, int offset, int length) {
+		if(sym.length() != length)
+			return false;
+		for(int i=0;i<length;++i)
+			if(sym.charAt(i) != buf[offset+i])
+				return false;
+		return true;
+	}
+
+	/** Returns the index of the symbol with the given characters, adding it if necessary. */
+	public int intern(char[] buf, int offset, int length) {
+		int h = hash(buf, offset, length);
+		int mask = table.length - 1;
+		for(int slot = h & mask;; slot = (slot + 1) & mask) {
+			int entry = table[slot];
+			if(entry == 0)
+				break;
+			if(hashes[entry-1] == h && matches(symbols[entry-1], buf, offset, length))
+				return entry-1;
+		}
+
+		if(size == symbols.length) {
+			symbols = Arrays.copyOf(symbols, 2*size);
+			hashes = Arrays.copyOf(hashes, 2*size);
+		}
+		symbols[size] = new String(buf, offset, length);
+		hashes[size] = h;
+		++size;
+		if(2*size > table.length)
+			rehash();
+		else
+			insert(table, h, size);
+		return size-1;
+	}
+
+	/** Returns the index of the given symbol, adding it if necessary. */
+	public int intern(String sym) {
+		return intern(sym.toCharArray(), 0, sym.length());
+	}
+
+	private static void insert(int[] table, int h, int entry) {
+		int mask = table.length - 1;
+		int slot = h & mask;
+		while(table[slot] != 0)
+			slot = (slot + 1) & mask;
+		table[slot] = entry;
+	}
+
+	private void rehash() {
+		table = new int[2*table.length];
+		for(int i=0;i<size;++i)
+			insert(table, hashes[i], i+1);
+	}
+
+	/** Returns the symbol with the given index. */
+	public String get(int index) {
+		return symbols[index];
+	}
+
+	/** The number of distinct symbols in the table. */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,128 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.Local;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.IdentityStmt;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.scalar.SimpleLiveLocals;
+
+/**
+ * This class recycles temporary locals once they are dead. Every call to
+ * {@link FunctionCodeGenerator#mkTemp(soot.Type)} yields a fresh local, so large functions end up
+ * with many single-use locals; this class runs a liveness analysis over the finished body and merges
+ * locals of the same type whose live ranges do not overlap.
+ *
+ * Locals defined by identity statements (i.e., parameters) are never merged. Locals for declared
+ * variables cannot be told apart from temporaries at this level and are packed as well; this is
+ * safe, since only locals that are never live at the same time share a slot.
+ */
+public class TempPacker {
+	/** Local counts before and after packing, for every method packed so far. */
+	private final Map<SootMethod, int[]> localCounts = new LinkedHashMap<SootMethod, int[]>();
+
+	/**
+	 * Packs the locals of the given body; returns the number of locals eliminated.
+	 */
+	public int pack(Body body) {
+		int before = body.getLocalCount();
+
+		// parameters keep their own locals
+		Set<Local> fixed = new HashSet<Local>();
+		for(Unit u : body.getUnits())
+			if(u instanceof IdentityStmt && ((IdentityStmt)u).getLeftOp() instanceof Local)
+				fixed.add((Local)((IdentityStmt)u).getLeftOp());
+
+		// two locals interfere if one of them is defined while the other one is live
+		Map<Local, Set<Local>> interference = new HashMap<Local, Set<Local>>();
+		SimpleLiveLocals liveness = new SimpleLiveLocals(new ExceptionalUnitGraph(body));
+		for(Unit u : body.getUnits()) {
+			List<Local> liveAfter = liveness.getLiveLocalsAfter(u);
+			for(ValueBox box : u.getDefBoxes()) {
+				if(!(box.getValue() instanceof Local))
+					continue;
+				Local def = (Local)box.getValue();
+				for(Local live : liveAfter) {
+					if(live != def) {
+						interferenceSet(interference, def).add(live);
+						interferenceSet(interference, live).add(def);
+					}
+				}
+			}
+		}
+
+		// greedily assign every local to the first compatible representative of the same type
+		Map<Local, Local> representative = new HashMap<Local, Local>();
+		Map<Local, Set<Local>> members = new HashMap<Local, Set<Local>>();
+		List<Local> reps = new ArrayList<Local>();
+		for(Local l : body.getLocals()) {
+			Local rep = null;
+			if(!fixed.contains(l)) {
+				for(Local candidate : reps) {
+					if(candidate.getType().equals(l.getType()) && !interferes(interference, members.get(candidate), l)) {
+						rep = candidate;
+						break;
+					}
+				}
+			}
+			if(rep == null) {
+				rep = l;
+				members.put(rep, new HashSet<Local>());
+				if(!fixed.contains(l))
+					reps.add(rep);
+			}
+			members.get(rep).add(l);
+			representative.put(l, rep);
+		}
+
+		// rewrite all occurrences, then drop the locals that have been merged away
+		for(ValueBox box : body.getUseAndDefBoxes()) {
+			Value v = box.getValue();
+			if(v instanceof Local && representative.get(v) != v)
+				box.setValue(representative.get(v));
+		}
+		for(Map.Entry<Local, Local> entry : representative.entrySet())
+			if(entry.getKey() != entry.getValue())
+				body.getLocals().remove(entry.getKey());
+
+		int after = body.getLocalCount();
+		localCounts.put(body.getMethod(), new int[] { before, after });
+		return before - after;
+	}
+
+	private static Set<Local> interferenceSet(Map<Local, Set<Local>> interference, Local l) {
+		Set<Local> res = interference.get(l);
+		if(res == null)
+			interference.put(l, res = new HashSet<Local>());
+		return res;
+	}
+
+	private static boolean interferes(Map<Local, Set<Local>> interference, Set<Local> group, Local l) {
+		Set<Local> conflicts = interference.get(l);
+		if(conflicts == null)
+			return false;
+		for(Local member : group)
+			if(conflicts.contains(member))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the local counts before and after packing, as a pair <code>{before, after}</code>,
+	 * for every method packed by this object.
+	 */
+	public Map<SootMethod, int[]> getLocalCounts() {
+		return localCounts;
+	}
+}
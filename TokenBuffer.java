@@ -0,0 +1,104 @@
+package lexer;
+
+import java.util.Arrays;
+
+import frontend.Token;
+
+/**
+ * A compact token stream: tokens are stored as rows of parallel primitive arrays (type, start offset,
+ * length, line, column and symbol index) instead of as individual {@link Token} objects.
+ *
+ * Identifiers are interned in a {@link SymbolTable}; the lexemes of all other tokens can be recovered
+ * from the source text by their offset and length.
+ */
+public class TokenBuffer {
+	private static final Token.Type[] TYPES = Token.Type.values();
+
+	private int[] type, start, length, line, column, symbol;
+	private int size = 0;
+	private final SymbolTable symbols;
+
+	public TokenBuffer() {
+		this(1024, new SymbolTable());
+	}
+
+	/**
+	 * Creates a token buffer with the given initial capacity; identifiers are interned
+	 * in the given symbol table.
+	 */
+	public TokenBuffer(int capacity, SymbolTable symbols) {
+		capacity = Math.max(capacity, 16);
+		type = new int[capacity];
+		start = new int[capacity];
+		length = new int[capacity];
+		line = new int[capacity];
+		column = new int[capacity];
+		symbol = new int[capacity];
+		this.symbols = symbols;
+	}
+
+	/** Appends a token; <code>sym</code> is the symbol index of an identifier, or -1. */
+	void add(Token.Type tp, int startOffset, int len, int ln, int col, int sym) {
+		if(size == type.length) {
+			int capacity = 2*size;
+			type = Arrays.copyOf(type, capacity);
+			start = Arrays.copyOf(start, capacity);
+			length = Arrays.copyOf(length, capacity);
+			line = Arrays.copyOf(line, capacity);
+			column = Arrays.copyOf(column, capacity);
+			symbol = Arrays.copyOf(symbol, capacity);
+		}
+		type[size] = tp.ordinal();
+		start[size] = startOffset;
+		length[size] = len;
+		line[size] = ln;
+		column[size] = col;
+		symbol[size] = sym;
+		++size;
+	}
+
+	/** Removes all tokens, keeping the symbol table and the allocated storage. */
+	public void clear() {
+		size = 0;
+	}
+
+	/** The number of tokens in this buffer, including the final EOF token. */
+	public int size() {
+		return size;
+	}
+
+	/** The type of the i-th token. */
+	public Token.Type getType(int i) {
+		return TYPES[type[i]];
+	}
+
+	/** The offset of the lexeme of the i-th token in the source text. */
+	public int getStart(int i) {
+		return start[i];
+	}
+
+	/** The length of the lexeme of the i-th token. */
+	public int getLength(int i) {
+		return length[i];
+	}
+
+	/** The line of the i-th token. */
+	public int getLine(int i) {
+		return line[i];
+	}
+
+	/** The column of the i-th token. */
+	public int getColumn(int i) {
+		return column[i];
+	}
+
+	/** The symbol index of the i-th token if it is an identifier, and -1 otherwise. */
+	public int getSymbol(int i) {
+		return symbol[i];
+	}
+
+	/** The symbol table in which identifiers are interned. */
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+}
@@ -0,0 +1,145 @@
+package backend;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.EquivalentValue;
+import soot.Local;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.ArrayRef;
+import soot.jimple.AssignStmt;
+import soot.jimple.BinopExpr;
+import soot.jimple.NegExpr;
+import soot.jimple.Stmt;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * This class eliminates repeated computations of the same arithmetic expression or array load across
+ * the whole method body: if, on every path to a computation, the same expression has already been
+ * computed into the same local, and neither its operands nor that local have been reassigned since, the
+ * computation is replaced by a copy of that local. Array loads are additionally invalidated by array
+ * stores and calls.
+ *
+ * Since locals may be assigned more than once, the analysis tracks pairs of an expression and the local
+ * holding its value, as a forward must-analysis over the unit graph: at a join, only the pairs available
+ * on all incoming paths remain.
+ *
+ * The copies introduced here are meant to be cleaned up by copy propagation afterwards.
+ */
+public class ValueNumbering {
+	/** Eliminates common subexpressions in the given body; returns the number of eliminated expressions. */
+	public int eliminate(Body body) {
+		UnitGraph graph = new BriefUnitGraph(body);
+		Map<Unit, Map<EquivalentValue, Local>> in = new HashMap<Unit, Map<EquivalentValue, Local>>();
+		Map<Unit, Map<EquivalentValue, Local>> out = new HashMap<Unit, Map<EquivalentValue, Local>>();
+		Set<Unit> heads = new HashSet<Unit>(graph.getHeads());
+
+		// iterate to a fixed point; units whose out set has not been computed yet do not constrain the meet
+		Deque<Unit> worklist = new ArrayDeque<Unit>(body.getUnits());
+		Set<Unit> queued = new HashSet<Unit>(body.getUnits());
+		while(!worklist.isEmpty()) {
+			Unit u = worklist.poll();
+			queued.remove(u);
+			Map<EquivalentValue, Local> available = null;
+			if(!heads.contains(u)) {
+				for(Unit pred : graph.getPredsOf(u)) {
+					Map<EquivalentValue, Local> predOut = out.get(pred);
+					if(predOut == null)
+						continue;
+					if(available == null)
+						available = new HashMap<EquivalentValue, Local>(predOut);
+					else
+						available.entrySet().retainAll(predOut.entrySet());
+				}
+			}
+			if(available == null)
+				available = new HashMap<EquivalentValue, Local>();
+			in.put(u, available);
+
+			Map<EquivalentValue, Local> res = new HashMap<EquivalentValue, Local>(available);
+			transfer(u, res);
+			if(!res.equals(out.get(u))) {
+				out.put(u, res);
+				for(Unit succ : graph.getSuccsOf(u))
+					if(queued.add(succ))
+						worklist.add(succ);
+			}
+		}
+
+		int n = 0;
+		for(Unit u : body.getUnits()) {
+			Value rhs = candidate(u);
+			if(rhs == null)
+				continue;
+			Local holder = in.get(u).get(new EquivalentValue(rhs));
+			if(holder != null) {
+				((AssignStmt)u).setRightOp(holder);
+				++n;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Updates the available expressions for the given unit. A unit recomputing an available expression
+	 * does not make its own target a holder of it, so the result is the same after the unit has been
+	 * rewritten into a copy.
+	 */
+	private static void transfer(Unit u, Map<EquivalentValue, Local> available) {
+		Value rhs = candidate(u);
+		boolean reused = rhs != null && available.containsKey(new EquivalentValue(rhs));
+		kill(u, available);
+		if(rhs != null && !reused) {
+			Local lhs = (Local)((AssignStmt)u).getLeftOp();
+			if(!uses(rhs, lhs))
+				available.put(new EquivalentValue(rhs), lhs);
+		}
+	}
+
+	/** If the given unit assigns an expression eligible for reuse to a local, returns that expression. */
+	private static Value candidate(Unit u) {
+		if(!(u instanceof AssignStmt) || !(((AssignStmt)u).getLeftOp() instanceof Local))
+			return null;
+		Value rhs = ((AssignStmt)u).getRightOp();
+		if(rhs instanceof BinopExpr || rhs instanceof NegExpr || rhs instanceof ArrayRef)
+			return rhs;
+		return null;
+	}
+
+	private static boolean uses(Value expr, Local l) {
+		for(ValueBox box : expr.getUseBoxes())
+			if(box.getValue() == l)
+				return true;
+		return false;
+	}
+
+	/** Removes all expressions from the available set whose value may be changed by the given unit. */
+	private static void kill(Unit u, Map<EquivalentValue, Local> available) {
+		boolean clobbersArrays = ((Stmt)u).containsInvokeExpr()
+				|| u instanceof AssignStmt && ((AssignStmt)u).getLeftOp() instanceof ArrayRef;
+		for(ValueBox def : u.getDefBoxes()) {
+			if(!(def.getValue() instanceof Local))
+				continue;
+			Local l = (Local)def.getValue();
+			for(Iterator<Map.Entry<EquivalentValue, Local>> i = available.entrySet().iterator(); i.hasNext();) {
+				Map.Entry<EquivalentValue, Local> entry = i.next();
+				if(entry.getValue() == l || uses(entry.getKey().getValue(), l))
+					i.remove();
+			}
+		}
+		if(clobbersArrays) {
+			for(Iterator<EquivalentValue> i = available.keySet().iterator(); i.hasNext();)
+				if(i.next().getValue() instanceof ArrayRef)
+					i.remove();
+		}
+	}
+}